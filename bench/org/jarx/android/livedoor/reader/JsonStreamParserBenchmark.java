@@ -0,0 +1,199 @@
+package org.jarx.android.livedoor.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Compares JsonStreamParser with json_simple on recorded api responses.
+ *
+ * Record responses of /api/subs, /api/unread and /api/all to files and
+ * run "ant benchmark -Dpayloads=dir" or
+ * "java JsonStreamParserBenchmark [-n iterations] file ...".
+ */
+public class JsonStreamParserBenchmark {
+
+    private static final JsonStreamParser.Keys KEYS = new JsonStreamParser.Keys(
+        "subscribe_id", "title", "icon", "link", "folder", "rate",
+        "unread_count", "subscribers_count", "modified_on",
+        "items", "id", "body", "author", "created_on");
+
+    public static void main(String[] args) throws Exception {
+        int iterations = 200;
+        int i = 0;
+        if (args.length > 1 && args[0].equals("-n")) {
+            iterations = Integer.parseInt(args[1]);
+            i = 2;
+        }
+        if (i == args.length) {
+            System.err.println("usage: JsonStreamParserBenchmark"
+                + " [-n iterations] file|dir ...");
+            System.exit(2);
+        }
+        for (; i < args.length; i++) {
+            File file = new File(args[i]);
+            File[] files = file.isDirectory() ? file.listFiles(): new File[]{file};
+            for (File f: files) {
+                if (f.isFile()) {
+                    run(f, iterations);
+                }
+            }
+        }
+    }
+
+    private static void run(File file, int iterations) throws Exception {
+        String json = readString(file);
+        CountingContentHandler simple = new CountingContentHandler();
+        CountingHandler stream = new CountingHandler();
+
+        // NOTE: both parsers must see the same primitives
+        new JSONParser().parse(new StringReader(json), simple);
+        new JsonStreamParser().parse(new StringReader(json), stream);
+        if (simple.count != stream.count || simple.sum != stream.sum) {
+            throw new IllegalStateException(file + ": json_simple "
+                + simple.count + "/" + simple.sum + ", stream "
+                + stream.count + "/" + stream.sum);
+        }
+
+        for (int warmup = 0; warmup < 2; warmup++) {
+            runSimple(json, iterations / 4 + 1);
+            runStream(json, iterations / 4 + 1);
+        }
+        long simpleNanos = runSimple(json, iterations);
+        long streamNanos = runStream(json, iterations);
+
+        System.out.println(file.getName() + " (" + json.length() + " chars, "
+            + stream.count + " primitives)");
+        report("json_simple", simpleNanos, iterations, json.length());
+        report("stream", streamNanos, iterations, json.length());
+    }
+
+    private static long runSimple(String json, int iterations) throws Exception {
+        JSONParser parser = new JSONParser();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            parser.parse(new StringReader(json), new CountingContentHandler());
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runStream(String json, int iterations) throws Exception {
+        JsonStreamParser parser = new JsonStreamParser();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            parser.parse(new StringReader(json), new CountingHandler());
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, long nanos, int iterations,
+            int length) {
+        double ms = nanos / 1000000.0 / iterations;
+        double mbs = (length / (1024.0 * 1024.0)) / (ms / 1000.0);
+        System.out.println(String.format("  %-12s %9.3f ms/parse %8.1f MB/s",
+            name, ms, mbs));
+    }
+
+    private static String readString(File file) throws IOException {
+        Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            StringBuilder b = new StringBuilder((int) file.length());
+            char[] c = new char[4096];
+            int len;
+            while ((len = in.read(c)) != -1) {
+                b.append(c, 0, len);
+            }
+            return new String(b);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** converts primitives of known keys like the sync handlers did */
+    private static class CountingContentHandler implements ContentHandler {
+
+        private String key;
+        private int count;
+        private long sum;
+
+        public void startJSON() {
+        }
+
+        public void endJSON() {
+        }
+
+        public boolean startObject() {
+            return true;
+        }
+
+        public boolean endObject() {
+            return true;
+        }
+
+        public boolean startObjectEntry(String key) {
+            this.key = key;
+            return true;
+        }
+
+        public boolean endObjectEntry() {
+            this.key = null;
+            return true;
+        }
+
+        public boolean startArray() {
+            return true;
+        }
+
+        public boolean endArray() {
+            return true;
+        }
+
+        public boolean primitive(Object value) {
+            if (this.key == null || KEYS.getId(this.key) < 0) {
+                return true;
+            }
+            this.count++;
+            if (value instanceof Number) {
+                this.sum += Utils.asLong(value);
+            } else if (value instanceof Boolean) {
+                this.sum += ((Boolean) value) ? 1: 0;
+            } else if (value != null) {
+                this.sum += Utils.asString(value).length();
+            }
+            return true;
+        }
+    }
+
+    private static class CountingHandler extends JsonStreamParser.HandlerAdapter {
+
+        private int count;
+        private long sum;
+
+        private CountingHandler() {
+            super(KEYS);
+        }
+
+        public boolean primitive(int key, JsonStreamParser.Value value) {
+            this.count++;
+            switch (value.getType()) {
+            case JsonStreamParser.Value.LONG:
+            case JsonStreamParser.Value.DOUBLE:
+                this.sum += value.asLong();
+                break;
+            case JsonStreamParser.Value.BOOLEAN:
+                this.sum += value.asBoolean() ? 1: 0;
+                break;
+            case JsonStreamParser.Value.STRING:
+                this.sum += value.asString().length();
+                break;
+            }
+            return true;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.jarx.android.livedoor.reader;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.FilterInputStream;
 import java.io.InputStream;
@@ -7,32 +8,43 @@ import java.io.InputStreamReader;
 import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 import org.apache.http.Header;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpVersion;
 import org.apache.http.NameValuePair;
+import org.apache.http.client.CookieStore;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
 import org.apache.http.cookie.Cookie;
 import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.ContentHandler;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 import static org.jarx.android.livedoor.reader.Utils.asInt;
@@ -55,16 +67,42 @@ public class ApiClient {
     private static final String URL_API_PIN_CLEAR = URL_API_BASE + "/pin/clear";
     private static final String URL_RPC_NOTIFY = "http://rpc.reader.livedoor.com/notify";
 
+    // NOTE: politeness to the reader host, not the count of sync workers
+    public static final int MAX_REQUESTS_PER_HOST = 2;
+    public static final long CONNECTION_WAIT_TIMEOUT = 60 * 1000;
+    public static final long CONNECTION_IDLE_TIMEOUT = 30 * 1000;
+
+    private static final int API_CHECK_CHARS = 128;
+    private static final Pattern API_UNAUTHORIZED
+        = Pattern.compile("^\\{\\s*\"ErrorCode\"\\s*:\\s*401\\b");
+    private static final String LOGIN_HOST = "member.livedoor.com";
+
     private final DefaultHttpClient client;
-    private String loginId;
-    private String password;
-    private String apiKey;
+    private final PooledConnManager connManager;
+    private final TransferStats transferStats = new TransferStats();
+    // NOTE: session is changed only with loginLock, a login at a time
+    private final Object loginLock = new Object();
+    private volatile SessionStore sessionStore;
+    private volatile String loginId;
+    private volatile String password;
+    private volatile String apiKey;
 
     public ApiClient() {
+        this(MAX_REQUESTS_PER_HOST);
+    }
+
+    /**
+     * requests more than maxRequestsPerHost to a host wait for
+     * a connection released.
+     */
+    public ApiClient(int maxRequestsPerHost) {
         HttpParams params = new BasicHttpParams();
         HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
         HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
         HttpProtocolParams.setUserAgent(params, getClass().getName());
+        ConnManagerParams.setMaxConnectionsPerRoute(params,
+            new ConnPerRouteBean(maxRequestsPerHost));
+        ConnManagerParams.setTimeout(params, CONNECTION_WAIT_TIMEOUT);
 
         final SchemeRegistry reg = new SchemeRegistry();
         reg.register(new Scheme("http",
@@ -72,11 +110,35 @@ public class ApiClient {
         reg.register(new Scheme("https",
             SSLSocketFactory.getSocketFactory(), 443));
 
-        final ThreadSafeClientConnManager manager
-            = new ThreadSafeClientConnManager(params, reg);
-
-        this.client = new DefaultHttpClient(manager, params);
+        this.connManager = new PooledConnManager(params, reg);
+        this.client = new DefaultHttpClient(this.connManager, params);
         this.client.getParams().setParameter("http.socket.timeout", 30 * 1000);
+        this.client.addRequestInterceptor(new HttpRequestInterceptor() {
+            public void process(HttpRequest req, HttpContext context)
+                    throws HttpException, IOException {
+                if (!req.containsHeader("Accept-Encoding")) {
+                    req.addHeader("Accept-Encoding", "gzip, deflate");
+                }
+            }
+        });
+    }
+
+    public TransferStats getTransferStats() {
+        return this.transferStats;
+    }
+
+    public PooledConnManager.Stats getPoolStats() {
+        return this.connManager.getStats();
+    }
+
+    /** closes connections kept alive */
+    public void closeIdleConnections() {
+        this.connManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+    }
+
+    /** a stored session is reused by login without requests */
+    public void setSessionStore(SessionStore sessionStore) {
+        this.sessionStore = sessionStore;
     }
 
     public boolean login(String loginId, String password)
@@ -84,19 +146,67 @@ public class ApiClient {
         if (loginId == null || password == null) {
             return false;
         }
-        if (this.apiKey == null || !this.loginId.equals(loginId)) {
-            this.apiKey = null;
-            this.loginId = loginId;
+        synchronized (this.loginLock) {
+            if (this.apiKey == null || !loginId.equals(this.loginId)) {
+                this.apiKey = null;
+                this.loginId = loginId;
+                this.password = password;
+                if (!restoreSession()) {
+                    initApiKey();
+                }
+            }
+            // NOTE: password is kept for login again on session expired
             this.password = password;
-            initApiKey();
+            return isLogined();
         }
-        return isLogined();
     }
 
+    /**
+     * logins by the login id and password, not by the current or stored
+     * session. the current session is kept if the login failed.
+     */
+    public boolean loginAgain(String loginId, String password)
+            throws IOException, ReaderException {
+        if (loginId == null || password == null) {
+            return false;
+        }
+        synchronized (this.loginLock) {
+            String oldApiKey = this.apiKey;
+            String oldLoginId = this.loginId;
+            String oldPassword = this.password;
+            CookieStore cookieStore = this.client.getCookieStore();
+            List<Cookie> oldCookies = new ArrayList<Cookie>(cookieStore.getCookies());
+            boolean logined = false;
+            try {
+                this.apiKey = null;
+                this.loginId = loginId;
+                this.password = password;
+                cookieStore.clear();
+                doLogin();
+                logined = isLogined();
+                return logined;
+            } finally {
+                if (!logined) {
+                    this.apiKey = oldApiKey;
+                    this.loginId = oldLoginId;
+                    this.password = oldPassword;
+                    cookieStore.clear();
+                    for (Cookie cookie: oldCookies) {
+                        cookieStore.addCookie(cookie);
+                    }
+                }
+            }
+        }
+    }
+
+    /** forgets the session in memory, the stored session is kept */
     public void logout() {
-        this.apiKey = null;
-        this.loginId = null;
-        this.password = null;
+        synchronized (this.loginLock) {
+            this.apiKey = null;
+            this.loginId = null;
+            this.password = null;
+        }
+        closeIdleConnections();
         // PENDING: logout
     }
 
@@ -108,15 +218,30 @@ public class ApiClient {
         return this.loginId;
     }
 
-    private void initApiKey() throws IOException, ReaderException {
+    /**
+     * logins if no api key. other threads wait for the login and share
+     * the api key.
+     */
+    private String initApiKey() throws IOException, ReaderException {
+        String curApiKey = this.apiKey;
+        if (curApiKey != null) {
+            return curApiKey;
+        }
+        synchronized (this.loginLock) {
+            if (this.apiKey == null) {
+                doLogin();
+            }
+            return this.apiKey;
+        }
+    }
+
+    private void doLogin() throws IOException, ReaderException {
         if (this.loginId == null || this.password == null) {
             throw new IllegalStateException("no login info");
         }
-        if (this.apiKey != null) {
-            return;
-        }
 
         HttpResponse res = this.client.execute(new HttpGet(URL_READER));
+        consume(res);
         int resStatus = res.getStatusLine().getStatusCode();
         if (resStatus != HttpStatus.SC_OK) {
             throw new IOException("invalid http status " + resStatus);
@@ -153,13 +278,108 @@ public class ApiClient {
                 break;
             }
         }
+        if (this.apiKey != null && this.sessionStore != null) {
+            this.sessionStore.save(this.loginId, this.apiKey, cookies);
+        }
+    }
+
+    private boolean restoreSession() {
+        if (this.sessionStore == null
+                || !this.loginId.equals(this.sessionStore.getLoginId())) {
+            return false;
+        }
+        String storedApiKey = this.sessionStore.getApiKey();
+        if (storedApiKey == null) {
+            return false;
+        }
+        CookieStore cookieStore = this.client.getCookieStore();
+        cookieStore.clear();
+        for (Cookie cookie: this.sessionStore.getCookies()) {
+            cookieStore.addCookie(cookie);
+        }
+        this.apiKey = storedApiKey;
+        return true;
+    }
+
+    /** forgets the session in memory and the stored session */
+    public void clearSession() {
+        synchronized (this.loginLock) {
+            this.apiKey = null;
+            this.client.getCookieStore().clear();
+            if (this.sessionStore != null) {
+                this.sessionStore.clear();
+            }
+        }
+    }
+
+    /**
+     * logins again if the expired api key is still used, requests
+     * failed with the same api key share a login.
+     */
+    private String renewApiKey(String expiredApiKey)
+            throws IOException, ReaderException {
+        synchronized (this.loginLock) {
+            if (this.apiKey != null && !this.apiKey.equals(expiredApiKey)) {
+                return this.apiKey;
+            }
+            clearSession();
+            return initApiKey();
+        }
+    }
+
+    /**
+     * posts to the api with the api key. if the session is expired,
+     * login again and retry once.
+     */
+    private java.io.Reader doApiPostReader(String url, List<NameValuePair> params)
+            throws IOException, ReaderException {
+        String curApiKey = initApiKey();
+        try {
+            return checkApiReader(doPostReader(url, withApiKey(params, curApiKey)));
+        } catch (UnauthorizedException e) {
+            curApiKey = renewApiKey(curApiKey);
+            return checkApiReader(doPostReader(url, withApiKey(params, curApiKey)));
+        }
+    }
+
+    /**
+     * peeks the head of the api response. the expired session may be
+     * answered by the login page or the error code 401, not by the status.
+     */
+    private static java.io.Reader checkApiReader(java.io.Reader reader)
+            throws IOException {
+        BufferedReader in = new BufferedReader(reader);
+        char[] head = new char[API_CHECK_CHARS];
+        int len = 0;
+        in.mark(API_CHECK_CHARS);
+        while (len < head.length) {
+            int n = in.read(head, len, head.length - len);
+            if (n == -1) {
+                break;
+            }
+            len += n;
+        }
+        in.reset();
+        String s = new String(head, 0, len).trim();
+        if (s.startsWith("<") || API_UNAUTHORIZED.matcher(s).find()) {
+            in.close();
+            throw new UnauthorizedException("api response of no session");
+        }
+        return in;
+    }
+
+    private static List<NameValuePair> withApiKey(List<NameValuePair> params,
+            String apiKey) {
+        List<NameValuePair> apiParams
+            = new ArrayList<NameValuePair>(params.size() + 1);
+        apiParams.add(new BasicNameValuePair("apiKey", apiKey));
+        apiParams.addAll(params);
+        return apiParams;
     }
 
     /** implements /api/subs */
     public java.io.Reader readSubs(boolean unread, int fromId, int limit)
             throws IOException, ReaderException {
-        initApiKey();
-
         StringBuilder buff = new StringBuilder(URL_API_SUBS.length() + 40);
         buff.append(URL_API_SUBS);
         buff.append("?unread=");
@@ -170,14 +390,14 @@ public class ApiClient {
         buff.append(limit);
 
         List<NameValuePair> params = new ArrayList<NameValuePair>(1);
-        params.add(new BasicNameValuePair("apiKey", this.apiKey));
 
-        return doPostReader(new String(buff), params);
+        return doApiPostReader(new String(buff), params);
     }
 
-    public void handleSubs(boolean unread, int fromId, int limit, ContentHandler handler)
+    public void handleSubs(boolean unread, int fromId, int limit,
+            JsonStreamParser.Handler handler)
             throws IOException, ParseException, ReaderException {
-        new JSONParser().parse(readSubs(unread, fromId, limit), handler);
+        parse(readSubs(unread, fromId, limit), handler);
     }
 
     public JSONArray subs(boolean unread, int fromId, int limit)
@@ -188,20 +408,18 @@ public class ApiClient {
     /** implements /api/all */
     public java.io.Reader readAll(long subId, int offset, int limit)
             throws IOException, ReaderException {
-        initApiKey();
-
         List<NameValuePair> params = new ArrayList<NameValuePair>(4);
-        params.add(new BasicNameValuePair("apiKey", this.apiKey));
         params.add(new BasicNameValuePair("subscribe_id", Long.toString(subId)));
         params.add(new BasicNameValuePair("offset", Integer.toString(offset)));
         params.add(new BasicNameValuePair("limit", Integer.toString(limit)));
 
-        return doPostReader(URL_API_ALL, params);
+        return doApiPostReader(URL_API_ALL, params);
     }
 
-    public void handleAll(long subId, int offset, int limit, ContentHandler handler)
+    public void handleAll(long subId, int offset, int limit,
+            JsonStreamParser.Handler handler)
             throws IOException, ParseException, ReaderException {
-        new JSONParser().parse(readAll(subId, offset, limit), handler);
+        parse(readAll(subId, offset, limit), handler);
     }
 
     public JSONArray all(long subId, int offset, int limit)
@@ -212,18 +430,15 @@ public class ApiClient {
     /** implements /api/unread */
     public java.io.Reader readUnread(long subId)
             throws IOException, ReaderException {
-        initApiKey();
-
         List<NameValuePair> params = new ArrayList<NameValuePair>(2);
-        params.add(new BasicNameValuePair("apiKey", this.apiKey));
         params.add(new BasicNameValuePair("subscribe_id", Long.toString(subId)));
 
-        return doPostReader(URL_API_UNREAD, params);
+        return doApiPostReader(URL_API_UNREAD, params);
     }
 
-    public void handleUnread(long subId, ContentHandler handler)
+    public void handleUnread(long subId, JsonStreamParser.Handler handler)
             throws IOException, ParseException, ReaderException {
-        new JSONParser().parse(readUnread(subId), handler);
+        parse(readUnread(subId), handler);
     }
 
     public JSONArray unread(long subId)
@@ -235,13 +450,10 @@ public class ApiClient {
     /** implements /api/touch_all */
     public boolean touchAll(long subId)
             throws IOException, ParseException, ReaderException {
-        initApiKey();
-
         List<NameValuePair> params = new ArrayList<NameValuePair>(2);
-        params.add(new BasicNameValuePair("apiKey", this.apiKey));
         params.add(new BasicNameValuePair("subscribe_id", Long.toString(subId)));
 
-        JSONObject result = toJSONObject(doPostReader(URL_API_TOUCH_ALL, params));
+        JSONObject result = toJSONObject(doApiPostReader(URL_API_TOUCH_ALL, params));
         int errorCode = asInt(result.get("ErrorCode"));
         int isSuccess = asInt(result.get("isSuccess"));
         return (errorCode == 0 && isSuccess == 1);
@@ -250,30 +462,24 @@ public class ApiClient {
     /** implements /api/pin/all */
     public java.io.Reader readPinAll()
             throws IOException, ReaderException {
-        initApiKey();
-
         List<NameValuePair> params = new ArrayList<NameValuePair>(3);
-        params.add(new BasicNameValuePair("apiKey", this.apiKey));
 
-        return doPostReader(URL_API_PIN_ALL, params);
+        return doApiPostReader(URL_API_PIN_ALL, params);
     }
 
-    public void handlePinAll(ContentHandler handler)
+    public void handlePinAll(JsonStreamParser.Handler handler)
             throws IOException, ParseException, ReaderException {
-        new JSONParser().parse(readPinAll(), handler);
+        parse(readPinAll(), handler);
     }
 
     /** implements /api/pin/add */
     public boolean pinAdd(String link, String title)
             throws IOException, ParseException, ReaderException {
-        initApiKey();
-
         List<NameValuePair> params = new ArrayList<NameValuePair>(3);
-        params.add(new BasicNameValuePair("apiKey", this.apiKey));
         params.add(new BasicNameValuePair("link", link));
         params.add(new BasicNameValuePair("title", title));
 
-        JSONObject result = toJSONObject(doPostReader(URL_API_PIN_ADD, params));
+        JSONObject result = toJSONObject(doApiPostReader(URL_API_PIN_ADD, params));
         int errorCode = asInt(result.get("ErrorCode"));
         int isSuccess = asInt(result.get("isSuccess"));
         return (errorCode == 0 && isSuccess == 1);
@@ -282,13 +488,10 @@ public class ApiClient {
     /** implements /api/pin/add */
     public boolean pinRemove(String link)
             throws IOException, ParseException, ReaderException {
-        initApiKey();
-
         List<NameValuePair> params = new ArrayList<NameValuePair>(2);
-        params.add(new BasicNameValuePair("apiKey", this.apiKey));
         params.add(new BasicNameValuePair("link", link));
 
-        JSONObject result = toJSONObject(doPostReader(URL_API_PIN_REMOVE, params));
+        JSONObject result = toJSONObject(doApiPostReader(URL_API_PIN_REMOVE, params));
         int errorCode = asInt(result.get("ErrorCode"));
         int isSuccess = asInt(result.get("isSuccess"));
         return (errorCode == 0 && isSuccess == 1);
@@ -297,27 +500,25 @@ public class ApiClient {
     /** implements /api/pin/add */
     public boolean pinClear()
             throws IOException, ParseException, ReaderException {
-        initApiKey();
-
         List<NameValuePair> params = new ArrayList<NameValuePair>(1);
-        params.add(new BasicNameValuePair("apiKey", this.apiKey));
 
-        JSONObject result = toJSONObject(doPostReader(URL_API_PIN_CLEAR, params));
+        JSONObject result = toJSONObject(doApiPostReader(URL_API_PIN_CLEAR, params));
         int errorCode = asInt(result.get("ErrorCode"));
         int isSuccess = asInt(result.get("isSuccess"));
         return (errorCode == 0 && isSuccess == 1);
     }
 
     public int countUnread() throws IOException {
-        if (this.loginId == null) {
+        String curLoginId = this.loginId;
+        if (curLoginId == null) {
             throw new IllegalStateException("no login id");
         }
 
         StringBuilder buff = new StringBuilder(
-            URL_RPC_NOTIFY.length() + this.loginId.length() + 5);
+            URL_RPC_NOTIFY.length() + curLoginId.length() + 5);
         buff.append(URL_RPC_NOTIFY);
         buff.append("?user=");
-        buff.append(this.loginId);
+        buff.append(curLoginId);
 
         String result = readString(doGetReader(new String(buff)));
         String[] results = result.split("\\|");
@@ -328,48 +529,156 @@ public class ApiClient {
     }
 
     public InputStream doGetInputStream(String url) throws IOException {
+        return doInputStream(new HttpGet(url), null);
+    }
+
+    /**
+     * conditional GET, returns null if not modified.
+     * validators are updated by the response.
+     */
+    public InputStream doGetInputStream(String url, Validators validators)
+            throws IOException {
         HttpGet get = new HttpGet(url);
-        HttpResponse res = this.client.execute(get);
-        int resStatus = res.getStatusLine().getStatusCode();
-        if (resStatus != HttpStatus.SC_OK) {
-            throw new IOException("invalid http status " + resStatus);
+        if (validators.getEtag() != null) {
+            get.setHeader("If-None-Match", validators.getEtag());
         }
-
-        final HttpEntity entity = res.getEntity();
-        if (entity == null) {
-            throw new IOException("null response entity");
+        if (validators.getLastModified() != null) {
+            get.setHeader("If-Modified-Since", validators.getLastModified());
         }
-
-        return new FilterInputStream(entity.getContent()) {
-            public void close() throws IOException {
-                super.close();
-                // entity.consumeContent();
-            }
-        };
+        return doInputStream(get, validators);
     }
 
     public InputStream doPostInputStream(String url, List<NameValuePair> params)
             throws IOException {
         HttpPost post = new HttpPost(url);
         post.setEntity(new UrlEncodedFormEntity(params, HTTP.UTF_8));
+        return doInputStream(post, null);
+    }
 
-        HttpResponse res = this.client.execute(post);
-        int resStatus = res.getStatusLine().getStatusCode();
-        if (resStatus != HttpStatus.SC_OK) {
-            throw new IOException("invalid http status " + resStatus);
+    private InputStream doInputStream(HttpUriRequest req, Validators validators)
+            throws IOException {
+        // NOTE: kept alive connections idle too long may be closed by server
+        this.connManager.closeIdleConnections(CONNECTION_IDLE_TIMEOUT,
+            TimeUnit.MILLISECONDS);
+        HttpResponse res = this.client.execute(req);
+        boolean release = true;
+        try {
+            int resStatus = res.getStatusLine().getStatusCode();
+            if (validators != null && resStatus == HttpStatus.SC_NOT_MODIFIED) {
+                return null;
+            }
+            if (resStatus == HttpStatus.SC_UNAUTHORIZED
+                    || resStatus == HttpStatus.SC_FORBIDDEN) {
+                throw new UnauthorizedException("invalid http status " + resStatus);
+            }
+            // NOTE: posts are not redirected, but to the login page if expired
+            String location = headerValue(res, "Location");
+            if (resStatus / 100 == 3 && location != null
+                    && location.indexOf(LOGIN_HOST) != -1
+                    && !LOGIN_HOST.equals(req.getURI().getHost())) {
+                throw new UnauthorizedException("redirected to " + location);
+            }
+            if (resStatus != HttpStatus.SC_OK) {
+                throw new HttpStatusException(resStatus);
+            }
+
+            final HttpEntity entity = res.getEntity();
+            if (entity == null) {
+                throw new IOException("null response entity");
+            }
+            if (validators != null) {
+                validators.setEtag(headerValue(res, "ETag"));
+                validators.setLastModified(headerValue(res, "Last-Modified"));
+            }
+
+            InputStream in = decode(req, entity);
+            in = new FilterInputStream(in) {
+                private boolean closed;
+                public void close() throws IOException {
+                    if (this.closed) {
+                        return;
+                    }
+                    this.closed = true;
+                    try {
+                        super.close();
+                    } finally {
+                        // NOTE: consume the rest to reuse the connection
+                        entity.consumeContent();
+                    }
+                }
+            };
+            release = false;
+            return in;
+        } finally {
+            if (release) {
+                consume(res);
+            }
         }
+    }
 
-        final HttpEntity entity = res.getEntity();
-        if (entity == null) {
-            throw new IOException("null response entity");
+    private static void consume(HttpResponse res) throws IOException {
+        HttpEntity entity = res.getEntity();
+        if (entity != null) {
+            entity.consumeContent();
         }
+    }
 
-        return new FilterInputStream(entity.getContent()) {
-            public void close() throws IOException {
-                super.close();
-                // entity.consumeContent();
+    private InputStream decode(HttpUriRequest req, HttpEntity entity)
+            throws IOException {
+        TransferStats.Endpoint endpoint = this.transferStats.getEndpoint(
+            endpointName(req));
+        InputStream in = TransferStats.countCompressed(
+            entity.getContent(), endpoint);
+        Header encoding = entity.getContentEncoding();
+        String name = (encoding == null) ? null: encoding.getValue();
+        if (name == null || name.equalsIgnoreCase("identity")) {
+            return TransferStats.countUncompressed(in, endpoint);
+        }
+        try {
+            if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+                in = new GZIPInputStream(in);
+            } else if (name.equalsIgnoreCase("deflate")) {
+                // NOTE: some servers send raw deflate without zlib header
+                BufferedInputStream bin = new BufferedInputStream(in, 2);
+                bin.mark(2);
+                int cmf = bin.read();
+                int flg = bin.read();
+                bin.reset();
+                boolean zlib = (cmf != -1 && flg != -1 && (cmf & 0x0f) == 8
+                    && ((cmf << 8) | flg) % 31 == 0);
+                final Inflater inflater = new Inflater(!zlib);
+                in = new InflaterInputStream(bin, inflater) {
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            inflater.end();
+                        }
+                    }
+                };
+            } else {
+                throw new IOException("unsupported content encoding " + name);
             }
-        };
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return TransferStats.countUncompressed(in, endpoint);
+    }
+
+    private static String endpointName(HttpUriRequest req) {
+        // NOTE: api endpoints by path, others (icons, login) by host
+        String host = req.getURI().getHost();
+        String path = req.getURI().getPath();
+        if (path != null && path.startsWith("/api/")) {
+            return host + path;
+        }
+        return host;
+    }
+
+    private static String headerValue(HttpResponse res, String name) {
+        Header header = res.getFirstHeader(name);
+        return (header == null) ? null: header.getValue();
     }
 
     public java.io.Reader doGetReader(String url) throws IOException {
@@ -381,6 +690,15 @@ public class ApiClient {
         return new InputStreamReader(doPostInputStream(url, params), HTTP.UTF_8);
     }
 
+    private static void parse(java.io.Reader in, JsonStreamParser.Handler handler)
+            throws IOException, ParseException {
+        try {
+            new JsonStreamParser().parse(in, handler);
+        } finally {
+            in.close();
+        }
+    }
+
     private static String readString(java.io.Reader in) throws IOException {
         try {
             StringBuilder b = new StringBuilder(2048);
@@ -405,4 +723,54 @@ public class ApiClient {
             throws IOException, ParseException {
         return (JSONObject) new JSONParser().parse(readString(in));
     }
+
+    /** session is expired or not logined */
+    public static class UnauthorizedException extends IOException {
+
+        public UnauthorizedException(String message) {
+            super(message);
+        }
+    }
+
+    /** http status not OK */
+    public static class HttpStatusException extends IOException {
+
+        private final int statusCode;
+
+        public HttpStatusException(int statusCode) {
+            super("invalid http status " + statusCode);
+            this.statusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return this.statusCode;
+        }
+    }
+
+    public static class Validators {
+
+        private String etag;
+        private String lastModified;
+
+        public Validators(String etag, String lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public String getEtag() {
+            return this.etag;
+        }
+
+        public void setEtag(String etag) {
+            this.etag = etag;
+        }
+
+        public String getLastModified() {
+            return this.lastModified;
+        }
+
+        public void setLastModified(String lastModified) {
+            this.lastModified = lastModified;
+        }
+    }
 }
@@ -10,24 +10,26 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.ServiceConnection;
+import android.database.ContentObserver;
 import android.database.Cursor;
-import android.graphics.Bitmap;
+import android.database.DataSetObserver;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.util.Log;
 import android.view.KeyEvent;
+import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.Window;
+import android.widget.BaseExpandableListAdapter;
 import android.widget.ImageView;
 import android.widget.ExpandableListView;
 import android.widget.ListView;
 import android.widget.RatingBar;
-import android.widget.ResourceCursorTreeAdapter;
 import android.widget.TextView;
 
 public class GroupSubListActivity extends ExpandableListActivity
@@ -59,7 +61,11 @@ public class GroupSubListActivity extends ExpandableListActivity
     private BroadcastReceiver refreshReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
-            GroupSubListActivity.this.initListAdapter();
+            // NOTE: managed cursor is requeried if subscriptions only updated
+            SyncEvent event = SyncEvent.fromIntent(intent);
+            if (event == null || event.isSubsChanged()) {
+                GroupSubListActivity.this.initListAdapter();
+            }
         }
     };
 
@@ -171,69 +177,192 @@ public class GroupSubListActivity extends ExpandableListActivity
             where.append(" and ");
             where.append(Subscription._UNREAD_COUNT).append(" > 0");
         }
-        String orderby;
+        int subsSort = ReaderPreferences.getSubsSort(context);
+        if (subsSort < 1 || subsSort > Subscription.SORT_ORDERS.length) {
+            subsSort = 1;
+        }
+        String orderby = Subscription.SORT_ORDERS[subsSort - 1];
         Uri uri;
+        int group;
         int subsView = ReaderPreferences.getSubsView(context);
         if (subsView == 2) {
-            uri = Subscription.FOLDER_CONTENT_URI;
-            orderby = Subscription._FOLDER + " asc";
+            uri = Subscription.FOLDER_TREE_URI;
+            group = Subscription.GROUP_FOLDER;
         } else {
-            uri = Subscription.RATE_CONTENT_URI;
-            orderby = Subscription._RATE + " desc";
+            uri = Subscription.RATE_TREE_URI;
+            group = Subscription.GROUP_RATE;
         }
         Cursor cursor = managedQuery(uri, null, new String(where), null, orderby);
         if (this.subsAdapter == null) {
-            this.subsAdapter = new SubsAdapter(this, cursor);
+            this.subsAdapter = new SubsAdapter(this, cursor, group);
             setListAdapter(this.subsAdapter);
         } else {
-            this.subsAdapter.changeCursor(cursor);
+            Cursor oldCursor = this.subsAdapter.changeCursor(cursor, group);
+            if (oldCursor != null) {
+                stopManagingCursor(oldCursor);
+                oldCursor.close();
+            }
         }
     }
 
-    private class SubsAdapter extends ResourceCursorTreeAdapter {
-
-        private SubsAdapter(Context context, Cursor cursor) {
-            super(context, cursor, R.layout.sub_group_list_row, R.layout.sub_list_row);
+    /**
+     * Subscriptions of all groups by one query, sliced into groups
+     * of the same folder or rate.
+     */
+    private class SubsAdapter extends BaseExpandableListAdapter {
+
+        private final LayoutInflater inflater;
+        private final ContentObserver changeObserver;
+        private final DataSetObserver dataSetObserver;
+        private Subscription.FilterCursor cursor;
+        private int group;
+        private int groupCount;
+        private int[] groupStarts = new int[0];
+        private int[] subsCounts = new int[0];
+        private int[] unreadCounts = new int[0];
+        private String[] groupKeys = new String[0];
+
+        private SubsAdapter(Context context, Cursor cursor, int group) {
+            this.inflater = LayoutInflater.from(context);
+            this.changeObserver = new ContentObserver(handler) {
+                @Override
+                public boolean deliverSelfNotifications() {
+                    return true;
+                }
+                @Override
+                public void onChange(boolean selfChange) {
+                    Cursor c = SubsAdapter.this.cursor;
+                    if (c != null && !c.isClosed()) {
+                        c.requery();
+                    }
+                }
+            };
+            this.dataSetObserver = new DataSetObserver() {
+                @Override
+                public void onChanged() {
+                    sliceGroups();
+                    notifyDataSetChanged();
+                }
+                @Override
+                public void onInvalidated() {
+                    SubsAdapter.this.groupCount = 0;
+                    notifyDataSetInvalidated();
+                }
+            };
+            changeCursor(cursor, group);
         }
 
-        @Override
-        public Cursor getChildrenCursor(Cursor groupCursor) {
-            Context context = getApplicationContext();
-            String where = "";
-            String[] whereArgs = null;
-            if (ReaderPreferences.isViewUnreadOnly(context)) {
-                where = Subscription._UNREAD_COUNT + " > 0 and ";
+        /** returns the old cursor */
+        private Cursor changeCursor(Cursor cursor, int group) {
+            Cursor oldCursor = this.cursor;
+            if (oldCursor != null) {
+                oldCursor.unregisterContentObserver(this.changeObserver);
+                oldCursor.unregisterDataSetObserver(this.dataSetObserver);
             }
-            int subsSort = ReaderPreferences.getSubsSort(context);
-            if (subsSort < 1 || subsSort > Subscription.SORT_ORDERS.length) {
-                subsSort = 1;
-            }
-            String orderby = Subscription.SORT_ORDERS[subsSort - 1];
-            final int group = groupCursor.getInt(1);
-            switch (group) {
-            case Subscription.GROUP_FOLDER:
-                where += Subscription._FOLDER + " = ?";
-                whereArgs = new String[]{groupCursor.getString(3)};
-                break;
-            case Subscription.GROUP_RATE:
-                where += Subscription._RATE + " = ?";
-                whereArgs = new String[]{groupCursor.getString(3)};
-                break;
-            default:
-                return null;
+            this.group = group;
+            this.cursor = new Subscription.FilterCursor(cursor);
+            this.cursor.registerContentObserver(this.changeObserver);
+            this.cursor.registerDataSetObserver(this.dataSetObserver);
+            sliceGroups();
+            notifyDataSetChanged();
+            return oldCursor;
+        }
+
+        private void sliceGroups() {
+            Subscription.FilterCursor c = this.cursor;
+            int count = c.getCount();
+            int[] starts = new int[count];
+            int[] subsCounts = new int[count];
+            int[] unreadCounts = new int[count];
+            String[] keys = new String[count];
+            int groupCount = 0;
+            String lastKey = null;
+            c.moveToPosition(-1);
+            while (c.moveToNext()) {
+                Subscription sub = c.getSubscription();
+                String key = (this.group == Subscription.GROUP_FOLDER)
+                    ? sub.getFolder(): Integer.toString(sub.getRate());
+                boolean sameGroup = (groupCount > 0) && ((key == null)
+                    ? lastKey == null: key.equals(lastKey));
+                if (!sameGroup) {
+                    starts[groupCount] = c.getPosition();
+                    keys[groupCount] = key;
+                    groupCount++;
+                    lastKey = key;
+                }
+                subsCounts[groupCount - 1]++;
+                unreadCounts[groupCount - 1] += sub.getUnreadCount();
             }
-            return new Subscription.FilterCursor(managedQuery(
-                Subscription.CONTENT_URI, null, where, whereArgs, orderby));
+            this.groupStarts = starts;
+            this.subsCounts = subsCounts;
+            this.unreadCounts = unreadCounts;
+            this.groupKeys = keys;
+            this.groupCount = groupCount;
         }
 
-        @Override
-        public void bindGroupView(View view, Context context, Cursor cursor,
-                boolean isExpanded) {
+        private Subscription moveToChild(int groupPosition, int childPosition) {
+            this.cursor.moveToPosition(this.groupStarts[groupPosition] + childPosition);
+            return this.cursor.getSubscription();
+        }
+
+        public int getGroupCount() {
+            return this.groupCount;
+        }
+
+        public int getChildrenCount(int groupPosition) {
+            return this.subsCounts[groupPosition];
+        }
+
+        public Object getGroup(int groupPosition) {
+            return this.groupKeys[groupPosition];
+        }
+
+        public Object getChild(int groupPosition, int childPosition) {
+            return moveToChild(groupPosition, childPosition);
+        }
+
+        public long getGroupId(int groupPosition) {
+            return groupPosition;
+        }
+
+        public long getChildId(int groupPosition, int childPosition) {
+            return moveToChild(groupPosition, childPosition).getId();
+        }
+
+        public boolean hasStableIds() {
+            return false;
+        }
+
+        public boolean isChildSelectable(int groupPosition, int childPosition) {
+            return groupPosition >= 0 && groupPosition < this.groupCount
+                && childPosition >= 0
+                && childPosition < this.subsCounts[groupPosition];
+        }
+
+        public View getGroupView(int groupPosition, boolean isExpanded,
+                View convertView, ViewGroup parent) {
+            View view = (convertView != null) ? convertView
+                : this.inflater.inflate(R.layout.sub_group_list_row, parent, false);
+            bindGroupView(view, groupPosition);
+            return view;
+        }
+
+        public View getChildView(int groupPosition, int childPosition,
+                boolean isLastChild, View convertView, ViewGroup parent) {
+            View view = (convertView != null) ? convertView
+                : this.inflater.inflate(R.layout.sub_list_row, parent, false);
+            bindChildView(view, moveToChild(groupPosition, childPosition));
+            return view;
+        }
+
+        private void bindGroupView(View view, int groupPosition) {
             View textLayout = view.findViewById(R.id.text_layout);
             View ratingBarLayout = view.findViewById(R.id.rating_bar_layout);
 
-            final int group = cursor.getInt(1);
-            switch (group) {
+            String key = this.groupKeys[groupPosition];
+            int subsCount = this.subsCounts[groupPosition];
+            int unreadCount = this.unreadCounts[groupPosition];
+            switch (this.group) {
             case Subscription.GROUP_FOLDER: {
                 if (textLayout.getVisibility() != View.VISIBLE) {
                     textLayout.setVisibility(View.VISIBLE);
@@ -242,14 +371,14 @@ public class GroupSubListActivity extends ExpandableListActivity
                     ratingBarLayout.setVisibility(View.GONE);
                 }
                 TextView titleView = (TextView) view.findViewById(R.id.title);
-                CharSequence title = cursor.getString(3);
+                CharSequence title = key;
                 if (title == null || title.length() == 0) {
                     title = getText(R.string.txt_no_folder);
                 }
                 StringBuilder buff = new StringBuilder(title.length() + 32);
                 buff.append(title).append(" (");
-                buff.append(cursor.getInt(2)).append(" feeds, ");
-                buff.append(cursor.getInt(4)).append(" unreads)");
+                buff.append(subsCount).append(" feeds, ");
+                buff.append(unreadCount).append(" unreads)");
                 titleView.setText(new String(buff));
                 break;
             } case Subscription.GROUP_RATE: {
@@ -261,22 +390,17 @@ public class GroupSubListActivity extends ExpandableListActivity
                 }
                 RatingBar ratingBar = (RatingBar) view.findViewById(R.id.rating_bar);
                 TextView countView = (TextView) view.findViewById(R.id.count);
-                ratingBar.setRating(cursor.getInt(3));
+                ratingBar.setRating(Integer.parseInt(key));
                 StringBuilder buff = new StringBuilder(32);
                 buff.append(" (");
-                buff.append(cursor.getInt(2)).append(" feeds, ");
-                buff.append(cursor.getInt(4)).append(" unreads)");
+                buff.append(subsCount).append(" feeds, ");
+                buff.append(unreadCount).append(" unreads)");
                 countView.setText(new String(buff));
                 break;
             }}
         }
 
-        @Override
-        public void bindChildView(View view, Context context, Cursor cursor,
-                boolean isLastChild) {
-            Subscription.FilterCursor subCursor = (Subscription.FilterCursor) cursor;
-            Subscription sub = subCursor.getSubscription();
-
+        private void bindChildView(View view, Subscription sub) {
             ImageView iconView = (ImageView) view.findViewById(R.id.icon);
             TextView titleView = (TextView) view.findViewById(R.id.title);
             RatingBar ratingBar = (RatingBar) view.findViewById(R.id.rating_bar);
@@ -284,12 +408,7 @@ public class GroupSubListActivity extends ExpandableListActivity
 
             titleView.setText(sub.getTitle() + " (" + sub.getUnreadCount() + ")");
             ratingBar.setRating(sub.getRate());
-            Bitmap icon = sub.getIcon(GroupSubListActivity.this);
-            if (icon == null) {
-                iconView.setImageResource(R.drawable.item_read);
-            } else {
-                iconView.setImageBitmap(icon);
-            }
+            IconCache.getInstance(GroupSubListActivity.this).bind(iconView, sub);
 
             StringBuilder buff = new StringBuilder(64);
             buff.append(sub.getSubscribersCount());
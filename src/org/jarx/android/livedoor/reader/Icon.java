@@ -0,0 +1,96 @@
+package org.jarx.android.livedoor.reader;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+/**
+ * Icon images by the icon uri, stored once for subscriptions sharing
+ * the same icon. Kept out of the subscription table, not to be paged
+ * through by queries of subscriptions.
+ */
+public class Icon implements BaseColumns {
+
+    public static final String TABLE_NAME = "icon";
+
+    public static final Uri CONTENT_URI
+        = Uri.parse(ReaderProvider.ICON_CONTENT_URI_NAME);
+
+    public static final String _URI = "uri";
+    public static final String _DATA = "data";
+
+    public static final String[] SELECT_ID = {_ID};
+    public static final String[] SELECT_DATA = {_DATA};
+
+    public static final String SQL_CREATE_TABLE
+        = "create table if not exists " + TABLE_NAME + " ("
+        + _ID + " integer primary key,"
+        + _URI + " text unique,"
+        + _DATA + " blob"
+        + ")";
+
+    public static String[] sqlForUpgrade(int oldVersion, int newVersion) {
+        if (oldVersion < 14) {
+            return new String[] {
+                SQL_CREATE_TABLE,
+                "insert or ignore into " + TABLE_NAME + " (" + _URI + ", " + _DATA
+                    + ") select " + Subscription._ICON_URI + ", "
+                    + Subscription._ICON + " from " + Subscription.TABLE_NAME
+                    + " where " + Subscription._ICON_URI + " is not null and "
+                    + Subscription._ICON + " is not null",
+                // PENDING: sqlite3 not supported drop column, vacuum in txn.
+                "update " + Subscription.TABLE_NAME + " set "
+                    + Subscription._ICON + " = null"
+            };
+        }
+        return new String[0];
+    }
+
+    /** the encoded icon image, null if not fetched */
+    public static byte[] getData(Context context, String iconUri) {
+        if (iconUri == null) {
+            return null;
+        }
+        ContentResolver cr = context.getContentResolver();
+        Cursor cursor = cr.query(CONTENT_URI, SELECT_DATA, _URI + " = ?",
+            new String[]{iconUri}, null);
+        try {
+            return (cursor.moveToFirst()) ? cursor.getBlob(0): null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public static boolean exists(ContentResolver cr, String iconUri) {
+        Cursor cursor = cr.query(CONTENT_URI, SELECT_ID, _URI + " = ?",
+            new String[]{iconUri}, null);
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public static void save(ContentResolver cr, String iconUri, byte[] data) {
+        ContentValues values = new ContentValues();
+        values.put(_DATA, data);
+        String[] whereArgs = {iconUri};
+        if (cr.update(CONTENT_URI, values, _URI + " = ?", whereArgs) == 0) {
+            values.put(_URI, iconUri);
+            cr.insert(CONTENT_URI, values);
+        }
+    }
+
+    /** deletes icons no subscription refers */
+    public static int deleteUnused(ContentResolver cr) {
+        return cr.delete(CONTENT_URI, _URI + " not in (select "
+            + Subscription._ICON_URI + " from " + Subscription.TABLE_NAME
+            + " where " + Subscription._ICON_URI + " is not null)", null);
+    }
+
+    private Icon() {
+    }
+}
@@ -0,0 +1,152 @@
+package org.jarx.android.livedoor.reader;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ImageView;
+
+/**
+ * Decoded subscription icons by icon uri, shared by subscriptions of the
+ * same icon. Least recently used icons are evicted over MAX_BYTES.
+ * Icons are decoded in background.
+ */
+public class IconCache {
+
+    public static final int MAX_BYTES = 1024 * 1024;
+    public static final int PLACEHOLDER_RESOURCE = R.drawable.item_read;
+
+    private static IconCache instance;
+
+    public static synchronized IconCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new IconCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // NOTE: access ordered, the eldest is the least recently used
+    private final LinkedHashMap<String, Entry> entries
+        = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+    private int bytes;
+
+    private IconCache(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Binds the icon of the subscription to the view, the placeholder is
+     * bound until the icon is decoded. Call from the main thread.
+     */
+    public void bind(final ImageView view, Subscription sub) {
+        final String iconUri = sub.getIconUri();
+        view.setTag(iconUri);
+        if (iconUri == null) {
+            view.setImageResource(PLACEHOLDER_RESOURCE);
+            return;
+        }
+        Entry entry = get(iconUri);
+        if (entry != null) {
+            setImage(view, entry.icon);
+            return;
+        }
+        view.setImageResource(PLACEHOLDER_RESOURCE);
+        this.executor.execute(new Runnable() {
+            public void run() {
+                // NOTE: the view is recycled for another icon
+                if (!iconUri.equals(view.getTag())) {
+                    return;
+                }
+                // NOTE: loaded by a former task for the same icon
+                Entry cached = get(iconUri);
+                final Entry entry = (cached != null) ? cached: load(iconUri);
+                if (entry == null) {
+                    return;
+                }
+                IconCache.this.handler.post(new Runnable() {
+                    public void run() {
+                        if (iconUri.equals(view.getTag())) {
+                            setImage(view, entry.icon);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /** Evicts the icon of the icon uri, when the icon is fetched again. */
+    public synchronized void invalidate(String iconUri) {
+        Entry entry = this.entries.remove(iconUri);
+        if (entry != null) {
+            this.bytes -= entry.bytes;
+        }
+    }
+
+    public synchronized void evictAll() {
+        this.entries.clear();
+        this.bytes = 0;
+    }
+
+    private synchronized Entry get(String iconUri) {
+        return this.entries.get(iconUri);
+    }
+
+    private synchronized void put(String iconUri, Entry entry) {
+        Entry old = this.entries.put(iconUri, entry);
+        if (old != null) {
+            this.bytes -= old.bytes;
+        }
+        this.bytes += entry.bytes;
+        Iterator<Entry> it = this.entries.values().iterator();
+        while (this.bytes > MAX_BYTES && it.hasNext()) {
+            this.bytes -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    private Entry load(String iconUri) {
+        Bitmap icon = null;
+        try {
+            byte[] data = Icon.getData(this.context, iconUri);
+            if (data != null) {
+                icon = BitmapFactory.decodeByteArray(data, 0, data.length);
+            }
+        } catch (OutOfMemoryError e) {
+            // NOTE: not cached, displays the placeholder
+            evictAll();
+            return null;
+        }
+        // NOTE: icons not fetched yet are cached too, no query at rebind
+        Entry entry = new Entry(icon);
+        put(iconUri, entry);
+        return entry;
+    }
+
+    private static void setImage(ImageView view, Bitmap icon) {
+        if (icon == null) {
+            view.setImageResource(PLACEHOLDER_RESOURCE);
+        } else {
+            view.setImageBitmap(icon);
+        }
+    }
+
+    private static class Entry {
+
+        private final Bitmap icon;
+        private final int bytes;
+
+        private Entry(Bitmap icon) {
+            this.icon = icon;
+            this.bytes = (icon == null) ? 0: icon.getRowBytes() * icon.getHeight();
+        }
+    }
+}
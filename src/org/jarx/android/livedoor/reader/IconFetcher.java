@@ -0,0 +1,170 @@
+package org.jarx.android.livedoor.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.BitmapFactory;
+import android.graphics.Bitmap;
+import android.text.TextUtils;
+import android.util.Log;
+
+/**
+ * Fetches subscription icons in background, once per icon uri.
+ */
+public class IconFetcher {
+
+    public static final int MAX_FETCHES = 2;
+    public static final long REFRESH_INTERVAL = 7 * 24 * 60 * 60;
+    public static final long RETRY_INTERVAL = 60 * 60;
+
+    private static final String TAG = "IconFetcher";
+
+    private static IconFetcher instance;
+
+    public static synchronized IconFetcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new IconFetcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private final Context context;
+    private final ApiClient client;
+    private final ExecutorService executor
+        = Executors.newFixedThreadPool(MAX_FETCHES);
+    private final Set<String> inFlight = new HashSet<String>();
+
+    private IconFetcher(Context context) {
+        this.context = context;
+        // NOTE: shares the connection pool with the sync
+        this.client = ReaderManager.getInstance(context).getApiClient();
+    }
+
+    /**
+     * Schedules icons never fetched, changed or not checked for
+     * REFRESH_INTERVAL seconds.
+     */
+    public int fetchStaleIcons() {
+        long now = System.currentTimeMillis() / 1000;
+        String where = Subscription._ICON_URI + " is not null and "
+            + Subscription._ICON_CHECKED_TIME + " < " + (now - REFRESH_INTERVAL);
+        ContentResolver cr = this.context.getContentResolver();
+        Icon.deleteUnused(cr);
+        Cursor cursor = cr.query(Subscription.CONTENT_URI,
+            Subscription.SELECT_ICON_VALIDATORS, where, null, null);
+        // NOTE: subscriptions sharing the icon uri are fetched once
+        HashSet<String> iconUris = new HashSet<String>();
+        int count = 0;
+        try {
+            while (cursor.moveToNext()) {
+                String iconUri = cursor.getString(0);
+                if (iconUris.add(iconUri) && fetch(iconUri,
+                        cursor.getString(1), cursor.getString(2))) {
+                    count++;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+
+    /**
+     * Schedules an icon fetch, returns false if already in flight.
+     */
+    public boolean fetch(final String iconUri, final String etag,
+            final String lastModified) {
+        if (TextUtils.isEmpty(iconUri)) {
+            return false;
+        }
+        synchronized (this.inFlight) {
+            if (!this.inFlight.add(iconUri)) {
+                return false;
+            }
+        }
+        this.executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    runFetch(iconUri, new ApiClient.Validators(etag, lastModified));
+                } finally {
+                    synchronized (IconFetcher.this.inFlight) {
+                        IconFetcher.this.inFlight.remove(iconUri);
+                    }
+                }
+            }
+        });
+        return true;
+    }
+
+    private void runFetch(String iconUri, ApiClient.Validators validators) {
+        ContentResolver cr = this.context.getContentResolver();
+        ContentValues values = new ContentValues();
+        long now = System.currentTimeMillis() / 1000;
+        long checkedTime = now;
+        try {
+            byte[] icon = readIcon(iconUri, validators);
+            if (icon != null) {
+                Icon.save(cr, iconUri, icon);
+                // NOTE: before the update, subscription lists are rebound
+                IconCache.getInstance(this.context).invalidate(iconUri);
+                values.put(Subscription._ICON_ETAG, validators.getEtag());
+                values.put(Subscription._ICON_LAST_MODIFIED,
+                    validators.getLastModified());
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "icon fetch failure " + iconUri + " " + e);
+            checkedTime = retryCheckedTime(cr, iconUri, now);
+        } catch (RuntimeException e) {
+            Log.d(TAG, "icon decode failure " + iconUri + " " + e);
+            checkedTime = retryCheckedTime(cr, iconUri, now);
+        }
+        values.put(Subscription._ICON_CHECKED_TIME, checkedTime);
+
+        cr.update(Subscription.CONTENT_URI, values,
+            Subscription._ICON_URI + " = ?", new String[]{iconUri});
+    }
+
+    /**
+     * the failed icon is retried after REFRESH_INTERVAL if stored once,
+     * or after RETRY_INTERVAL if never stored.
+     */
+    private static long retryCheckedTime(ContentResolver cr, String iconUri,
+            long now) {
+        if (Icon.exists(cr, iconUri)) {
+            return now;
+        }
+        return now - REFRESH_INTERVAL + RETRY_INTERVAL;
+    }
+
+    private byte[] readIcon(String iconUri, ApiClient.Validators validators)
+            throws IOException {
+        Bitmap icon = null;
+        InputStream in = this.client.doGetInputStream(iconUri, validators);
+        if (in == null) {
+            // NOTE: not modified
+            return null;
+        }
+        try {
+            icon = BitmapFactory.decodeStream(in);
+        } finally {
+            in.close();
+        }
+        if (icon == null) {
+            throw new IOException("invalid icon image");
+        }
+        int size = icon.getWidth() * icon.getHeight() * 2;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        icon.compress(Bitmap.CompressFormat.PNG, 100, out);
+        out.flush();
+        out.close();
+        return out.toByteArray();
+    }
+}
@@ -1,8 +1,14 @@
 package org.jarx.android.livedoor.reader;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
 import android.database.Cursor;
 import android.database.CursorWrapper;
+import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.provider.BaseColumns;
 import android.util.Log;
@@ -14,6 +20,14 @@ public class Item implements Serializable, BaseColumns {
 
     public static final Uri CONTENT_URI
         = Uri.parse(ReaderProvider.ITEM_CONTENT_URI_NAME);
+    public static final Uri UPSERT_URI
+        = Uri.parse(ReaderProvider.ITEM_UPSERT_URI_NAME);
+    public static final Uri SEARCH_URI
+        = Uri.parse(ReaderProvider.ITEM_SEARCH_URI_NAME);
+    public static final String SEARCH_QUERY_PARAM = "q";
+    public static final String PAGE_LIMIT_PARAM = "limit";
+    public static final String PAGE_AFTER_ID_PARAM = "after_id";
+    public static final String PAGE_BEFORE_ID_PARAM = "before_id";
 
     public static final String[] SELECT_ID = {_ID};
     public static final String[] SELECT_COUNT = {"count(" + _ID + ")"};
@@ -28,6 +42,18 @@ public class Item implements Serializable, BaseColumns {
     public static final String _UNREAD = "unread";
     public static final String _CREATED_TIME = "created_time";
     public static final String _MODIFIED_TIME = "modified_time";
+    // NOTE: database version 12 or later
+    public static final String _SUMMARY = "summary";
+
+    // NOTE: no body for lists, the summary is stored on sync
+    public static final String[] SELECT_HEADER = {
+        _ID, _SUBSCRIPTION_ID, _URI, _TITLE, _AUTHOR, _UNREAD,
+        _CREATED_TIME, _MODIFIED_TIME, _SUMMARY
+    };
+    public static final String[] SELECT_BODY = {_BODY};
+
+    // NOTE: @via twitter 140 / 2 chars
+    public static final int SUMMARY_LENGTH = 70;
 
     public static final String SQL_CREATE_TABLE
         = "create table if not exists " + TABLE_NAME + " ("
@@ -39,7 +65,8 @@ public class Item implements Serializable, BaseColumns {
         + _AUTHOR + " text,"
         + _UNREAD + " integer,"
         + _CREATED_TIME + " integer,"
-        + _MODIFIED_TIME + " integer"
+        + _MODIFIED_TIME + " integer,"
+        + _SUMMARY + " text"
         + ")";
 
     public static final String[] INDEX_COLUMNS = {
@@ -50,15 +77,172 @@ public class Item implements Serializable, BaseColumns {
         _MODIFIED_TIME
     };
 
+    // NOTE: database version 9 or later, unread counts of subscriptions
+    private static final String SQL_SUB_UNREAD_COUNT
+        = "update " + Subscription.TABLE_NAME + " set "
+        + Subscription._UNREAD_COUNT + " = ifnull("
+        + Subscription._UNREAD_COUNT + ", 0) + ";
+
+    public static final String[] SQL_CREATE_TRIGGERS = {
+        "create trigger if not exists item_unread_insert"
+            + " after insert on " + TABLE_NAME
+            + " when new." + _UNREAD + " = 1 begin "
+            + SQL_SUB_UNREAD_COUNT + "1 where "
+            + Subscription._ID + " = new." + _SUBSCRIPTION_ID + "; end",
+        "create trigger if not exists item_unread_update"
+            + " after update of " + _UNREAD + " on " + TABLE_NAME
+            + " when ifnull(old." + _UNREAD + ", 0)"
+            + " <> ifnull(new." + _UNREAD + ", 0) begin "
+            + SQL_SUB_UNREAD_COUNT + "ifnull(new." + _UNREAD + ", 0)"
+            + " - ifnull(old." + _UNREAD + ", 0) where "
+            + Subscription._ID + " = new." + _SUBSCRIPTION_ID + "; end",
+        "create trigger if not exists item_unread_delete"
+            + " after delete on " + TABLE_NAME
+            + " when old." + _UNREAD + " = 1 begin "
+            + SQL_SUB_UNREAD_COUNT + "-1 where "
+            + Subscription._ID + " = old." + _SUBSCRIPTION_ID + "; end"
+    };
+
+    // NOTE: database version 13 or later, full text of title, plain body, author
+    public static final String FTS_TABLE_NAME = "item_fts";
+    public static final int FTS_COLUMN_TITLE = 0;
+    public static final int FTS_COLUMN_BODY = 1;
+    public static final int FTS_COLUMN_AUTHOR = 2;
+
+    public static final String[] SQL_CREATE_FTS = {
+        "create virtual table " + FTS_TABLE_NAME
+            + " using fts3(" + _TITLE + ", " + _BODY + ", " + _AUTHOR + ")",
+        "create trigger if not exists item_fts_delete"
+            + " after delete on " + TABLE_NAME + " begin "
+            + "delete from " + FTS_TABLE_NAME
+            + " where docid = old." + _ID + "; end"
+    };
+
     public static String[] sqlForUpgrade(int oldVersion, int newVersion) {
+        ArrayList<String> sqls = new ArrayList<String>(5);
         if (oldVersion < 6) {
-            return new String[] {
-                ReaderProvider.sqlCreateIndex(TABLE_NAME,
-                    "idx_item_unread_by_sub_id",
-                    new String[]{_SUBSCRIPTION_ID, _UNREAD})
-            };
+            sqls.add(ReaderProvider.sqlCreateIndex(TABLE_NAME,
+                "idx_item_unread_by_sub_id",
+                new String[]{_SUBSCRIPTION_ID, _UNREAD}));
+        }
+        if (oldVersion < 9) {
+            sqls.add("update " + Subscription.TABLE_NAME + " set "
+                + Subscription._UNREAD_COUNT + " = (select count("
+                + TABLE_NAME + "." + _ID + ") from " + TABLE_NAME + " where "
+                + TABLE_NAME + "." + _SUBSCRIPTION_ID + " = "
+                + Subscription.TABLE_NAME + "." + Subscription._ID + " and "
+                + TABLE_NAME + "." + _UNREAD + " = 1)");
+            for (String sql: SQL_CREATE_TRIGGERS) {
+                sqls.add(sql);
+            }
+        }
+        if (oldVersion < 12) {
+            sqls.add("alter table " + TABLE_NAME + " add " + _SUMMARY + " text");
+        }
+        if (oldVersion < 13) {
+            for (String sql: SQL_CREATE_FTS) {
+                sqls.add(sql);
+            }
+        }
+        return sqls.toArray(new String[sqls.size()]);
+    }
+
+    /** creates summaries of items synced before database version 12 */
+    static void updateSummaries(SQLiteDatabase db) {
+        Cursor cursor = db.query(TABLE_NAME, new String[]{_ID, _BODY},
+            _SUMMARY + " is null", null, null, null, null);
+        try {
+            ContentValues values = new ContentValues();
+            String[] args = new String[1];
+            while (cursor.moveToNext()) {
+                values.put(_SUMMARY, createSummary(cursor.getString(1)));
+                args[0] = Long.toString(cursor.getLong(0));
+                db.update(TABLE_NAME, values, _ID + " = ?", args);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** indexes items synced before database version 13 */
+    static void updateFullTextIndex(SQLiteDatabase db) {
+        Cursor cursor = db.query(TABLE_NAME,
+            new String[]{_ID, _TITLE, _BODY, _AUTHOR},
+            null, null, null, null, null);
+        try {
+            ContentValues values = new ContentValues();
+            while (cursor.moveToNext()) {
+                values.put("docid", cursor.getLong(0));
+                values.put(_TITLE, cursor.getString(1));
+                values.put(_BODY, htmlAsPlainText(cursor.getString(2)));
+                values.put(_AUTHOR, cursor.getString(3));
+                db.insert(FTS_TABLE_NAME, null, values);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * returns the fts query of words in the keyword, as prefixes.
+     * returns null if the keyword has non ascii chars, the fts tokenizer
+     * does not split CJK words, so they are searched by like.
+     */
+    public static String toMatchQuery(String keyword) {
+        if (keyword == null) {
+            return null;
+        }
+        StringBuilder buff = new StringBuilder(keyword.length() + 8);
+        int wordStart = -1;
+        for (int i = 0; i <= keyword.length(); i++) {
+            char c = (i < keyword.length()) ? keyword.charAt(i): ' ';
+            if (c >= 0x80) {
+                return null;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (wordStart == -1) {
+                    wordStart = i;
+                }
+            } else if (wordStart != -1) {
+                if (buff.length() > 0) {
+                    buff.append(' ');
+                }
+                buff.append(keyword, wordStart, i);
+                buff.append('*');
+                wordStart = -1;
+            }
+        }
+        return (buff.length() == 0) ? null: new String(buff);
+    }
+
+    /**
+     * returns the uri of items in _id desc, newer than afterId and older
+     * than beforeId, up to limit. 0 is no bound.
+     */
+    public static Uri pageUri(Uri uri, long afterId, long beforeId, int limit) {
+        Uri.Builder builder = uri.buildUpon();
+        if (afterId > 0) {
+            builder.appendQueryParameter(PAGE_AFTER_ID_PARAM, Long.toString(afterId));
+        }
+        if (beforeId > 0) {
+            builder.appendQueryParameter(PAGE_BEFORE_ID_PARAM, Long.toString(beforeId));
+        }
+        if (limit > 0) {
+            builder.appendQueryParameter(PAGE_LIMIT_PARAM, Integer.toString(limit));
+        }
+        return builder.build();
+    }
+
+    /** plain text of the body, up to SUMMARY_LENGTH chars */
+    public static String createSummary(String body) {
+        String summary = stripWhitespaces(htmlAsPlainText(body));
+        if (summary == null) {
+            return "";
         }
-        return new String[0];
+        if (summary.length() <= SUMMARY_LENGTH) {
+            return summary;
+        }
+        return summary.substring(0, SUMMARY_LENGTH) + "...";
     }
 
     private static final String TAG = "Item";
@@ -72,6 +256,7 @@ public class Item implements Serializable, BaseColumns {
     private boolean unread;
     private long createdTime;
     private long modifiedTime;
+    private String summary;
 
     public Item() {
     }
@@ -108,32 +293,50 @@ public class Item implements Serializable, BaseColumns {
         this.body = body;
     }
 
+    /** loads the body not selected by the header projection */
+    public String loadBody(Context context) {
+        if (this.body != null) {
+            return this.body;
+        }
+        ContentResolver cr = context.getContentResolver();
+        Uri uri = ContentUris.withAppendedId(CONTENT_URI, this.getId());
+        Cursor cursor = cr.query(uri, SELECT_BODY, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                this.body = cursor.getString(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        return this.body;
+    }
+
     public String getSummary() {
-        if (this.body == null) {
-            return "";
+        String summary = this.summary;
+        if (summary == null) {
+            if (this.body == null) {
+                return "";
+            }
+            summary = createSummary(this.body);
         }
-        StringBuilder buff = new StringBuilder(256);
+        StringBuilder buff = new StringBuilder(128);
         long time = this.getCreatedOrModifiedTime();
         if (time > 0) {
             buff.append(formatTimeAgo(time));
         }
-
-        String summary = stripWhitespaces(htmlAsPlainText(this.body));
-        if (summary != null && summary.length() > 0) {
+        if (summary.length() > 0) {
             if (buff.length() > 0) {
                 buff.append(" | ");
             }
-            // NOTE: @via twitter 140 / 2 chars
-            if (summary.length() <= 70) {
-                buff.append(summary);
-            } else {
-                buff.append(summary.substring(0, 70));
-                buff.append("...");
-            }
+            buff.append(summary);
         }
         return new String(buff);
     }
 
+    public void setSummary(String summary) {
+        this.summary = summary;
+    }
+
     public String getUri() {
         return this.uri;
     }
@@ -190,6 +393,7 @@ public class Item implements Serializable, BaseColumns {
         private final int posUnread;
         private final int posCreatedTime;
         private final int posModifiedTime;
+        private final int posSummary;
 
         public FilterCursor(Cursor cursor) {
             this(cursor, null);
@@ -207,6 +411,7 @@ public class Item implements Serializable, BaseColumns {
             this.posUnread = getColumnIndex(Item._UNREAD);
             this.posCreatedTime = getColumnIndex(Item._CREATED_TIME);
             this.posModifiedTime = getColumnIndex(Item._MODIFIED_TIME);
+            this.posSummary = getColumnIndex(Item._SUMMARY);
         }
 
         public Item getItem() {
@@ -215,11 +420,13 @@ public class Item implements Serializable, BaseColumns {
             item.setSubscriptionId(getLong(this.posSubscriptionId));
             item.setUri(getString(this.posUri));
             item.setTitle(getString(this.posTitle));
-            item.setBody(getString(this.posBody));
+            // NOTE: list projections have no body
+            item.setBody((this.posBody == -1) ? null: getString(this.posBody));
             item.setAuthor(getString(this.posAuthor));
             item.setUnread(getInt(this.posUnread) == 1);
             item.setCreatedTime(getLong(this.posCreatedTime));
             item.setModifiedTime(getLong(this.posModifiedTime));
+            item.setSummary((this.posSummary == -1) ? null: getString(this.posSummary));
             return item;
         }
 
@@ -231,4 +438,57 @@ public class Item implements Serializable, BaseColumns {
             return (getInt(this.posUnread) == 1);
         }
     }
+
+    /**
+     * Cursor of SELECT_HEADER, columns by the fixed indexes.
+     */
+    public static class HeaderCursor extends CursorWrapper {
+
+        private static final int POS_ID = 0;
+        private static final int POS_SUBSCRIPTION_ID = 1;
+        private static final int POS_URI = 2;
+        private static final int POS_TITLE = 3;
+        private static final int POS_AUTHOR = 4;
+        private static final int POS_UNREAD = 5;
+        private static final int POS_CREATED_TIME = 6;
+        private static final int POS_MODIFIED_TIME = 7;
+        private static final int POS_SUMMARY = 8;
+
+        private final Item item;
+
+        public HeaderCursor(Cursor cursor) {
+            this(cursor, null);
+        }
+
+        /**
+         * @param item reused by getItem, for binding rows
+         */
+        public HeaderCursor(Cursor cursor, Item item) {
+            super(cursor);
+            this.item = item;
+        }
+
+        public Item getItem() {
+            Item item = (this.item == null) ? new Item(): this.item;
+            item.setId(getLong(POS_ID));
+            item.setSubscriptionId(getLong(POS_SUBSCRIPTION_ID));
+            item.setUri(getString(POS_URI));
+            item.setTitle(getString(POS_TITLE));
+            item.setBody(null);
+            item.setAuthor(getString(POS_AUTHOR));
+            item.setUnread(getInt(POS_UNREAD) == 1);
+            item.setCreatedTime(getLong(POS_CREATED_TIME));
+            item.setModifiedTime(getLong(POS_MODIFIED_TIME));
+            item.setSummary(getString(POS_SUMMARY));
+            return item;
+        }
+
+        public long getId() {
+            return getLong(POS_ID);
+        }
+
+        public boolean isUnread() {
+            return (getInt(POS_UNREAD) == 1);
+        }
+    }
 }
@@ -1,8 +1,12 @@
 package org.jarx.android.livedoor.reader;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
@@ -44,13 +48,17 @@ public class ItemActivity extends Activity
         implements ItemActivityHelper.Itemable {
 
     private static final String TAG = "ItemActivity";
+    // NOTE: items before and after the current item, rendered in advance
+    private static final int PREFETCH_WINDOW = 2;
 
     private Subscription sub;
     private Uri subUri;
     private ActivityHelper.Where baseWhere;
     private Item currentItem;
-    private Item.FilterCursor itemsCursor;
+    private Item.HeaderCursor itemsCursor;
     private HashSet<Long> readItemIds;
+    private final HashMap<Long, String> bodyHtmls = new HashMap<Long, String>();
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor();
     private ImageView pinView;
     private boolean pinOn;
     private ReaderService readerService;
@@ -244,6 +252,7 @@ public class ItemActivity extends Activity
     @Override
     public void onDestroy() {
         super.onDestroy();
+        this.prefetcher.shutdownNow();
         new Thread() {
             public void run() {
                 destroyItems();
@@ -360,6 +369,9 @@ public class ItemActivity extends Activity
         if (this.itemsCursor != null) {
             this.itemsCursor.close();
         }
+        synchronized (this.bodyHtmls) {
+            this.bodyHtmls.clear();
+        }
 
         String orderby = Item._ID + " desc";
         StringBuilder where = new StringBuilder(this.baseWhere.buff);
@@ -376,8 +388,9 @@ public class ItemActivity extends Activity
             if (this.unreadOnly && unreadOnlyWhereIndex == -1) {
                 where.append(unreadOnlyWhere);
             }
-            Item.FilterCursor csr = new Item.FilterCursor(managedQuery(
-                Item.CONTENT_URI, null, new String(where), whereArgs, orderby));
+            Item.HeaderCursor csr = new Item.HeaderCursor(managedQuery(
+                Item.CONTENT_URI, Item.SELECT_HEADER, new String(where),
+                whereArgs, orderby));
             int count = (csr == null) ? 0: csr.getCount();
             if (count > 0) {
                 this.itemsCursor = skipCursor(csr, itemId);
@@ -396,8 +409,9 @@ public class ItemActivity extends Activity
             }
         }
 
-        Item.FilterCursor csr = new Item.FilterCursor(managedQuery(
-            Item.CONTENT_URI, null, new String(where), whereArgs, orderby));
+        Item.HeaderCursor csr = new Item.HeaderCursor(managedQuery(
+            Item.CONTENT_URI, Item.SELECT_HEADER, new String(where),
+            whereArgs, orderby));
         int count = (csr == null) ? 0: csr.getCount();
         if (count == 0) {
             bindSubTitleView();
@@ -408,7 +422,7 @@ public class ItemActivity extends Activity
         setCurrentItem(csr.getItem());
     }
 
-    private static Item.FilterCursor skipCursor(Item.FilterCursor csr,
+    private static Item.HeaderCursor skipCursor(Item.HeaderCursor csr,
             long itemId) {
         if (itemId > 0) {
             boolean found = false;
@@ -467,20 +481,7 @@ public class ItemActivity extends Activity
         int readCount = cr.update(Item.CONTENT_URI, values,
             new String(where), null);
         if (readCount > 0) {
-            where.setLength(0);
-            where.append(Item._SUBSCRIPTION_ID + " = ").append(this.sub.getId());
-            where.append(" and ");
-            where.append(Item._UNREAD + " = 1");
-            Cursor c = cr.query(Item.CONTENT_URI, Item.SELECT_COUNT,
-                new String(where), null, null);
-            c.moveToNext();
-            int unreadCount = c.getInt(0);
-            c.close();
-
-            ContentValues subValues = new ContentValues();
-            subValues.put(Subscription._UNREAD_COUNT, unreadCount);
-            cr.update(subUri, subValues, null, null);
-
+            // NOTE: unread count of the subscription is updated by triggers
             sendBroadcast(new Intent(ReaderService.ACTION_UNREAD_MODIFIED));
         }
     }
@@ -620,8 +621,18 @@ public class ItemActivity extends Activity
             iconView.setImageResource(item.isUnread()
                 ? R.drawable.item_unread: R.drawable.item_read);
             titleView.setText(item.getTitle());
+            String html;
+            synchronized (this.bodyHtmls) {
+                html = this.bodyHtmls.get(item.getId());
+            }
+            if (html == null) {
+                // NOTE: not prefetched yet, the body of the item shown only
+                item.loadBody(c);
+                html = createBodyHtml(item);
+            }
             bodyView.loadDataWithBaseURL(ApiClient.URL_READER,
-                createBodyHtml(item), "text/html", "UTF-8", "about:blank");
+                html, "text/html", "UTF-8", "about:blank");
+            prefetchItems();
             if (bindTouchControlViews) {
                 bindTouchControlViews(true);
             }
@@ -632,6 +643,60 @@ public class ItemActivity extends Activity
         bindPinView();
     }
 
+    /**
+     * loads bodies and creates html of items around the current item in
+     * background, the others are discarded.
+     */
+    private void prefetchItems() {
+        Item.HeaderCursor csr = this.itemsCursor;
+        if (csr == null || this.currentItem == null) {
+            return;
+        }
+        int pos = csr.getPosition();
+        int count = csr.getCount();
+        final ArrayList<Item> items = new ArrayList<Item>(PREFETCH_WINDOW * 2);
+        HashSet<Long> windowIds = new HashSet<Long>(PREFETCH_WINDOW * 4);
+        windowIds.add(this.currentItem.getId());
+        // NOTE: the next item first, the previous, then the further
+        for (int i = 1; i <= PREFETCH_WINDOW; i++) {
+            for (int p = pos + i; p >= pos - i; p -= i * 2) {
+                if (p >= 0 && p < count && csr.moveToPosition(p)) {
+                    Item item = csr.getItem();
+                    items.add(item);
+                    windowIds.add(item.getId());
+                }
+            }
+        }
+        csr.moveToPosition(pos);
+        synchronized (this.bodyHtmls) {
+            this.bodyHtmls.keySet().retainAll(windowIds);
+        }
+        if (items.isEmpty() || this.prefetcher.isShutdown()) {
+            return;
+        }
+        final Context context = getApplicationContext();
+        this.prefetcher.execute(new Runnable() {
+            public void run() {
+                for (Item item: items) {
+                    if (Thread.interrupted()) {
+                        return;
+                    }
+                    Long itemId = item.getId();
+                    synchronized (ItemActivity.this.bodyHtmls) {
+                        if (ItemActivity.this.bodyHtmls.containsKey(itemId)) {
+                            continue;
+                        }
+                    }
+                    item.loadBody(context);
+                    String html = createBodyHtml(item);
+                    synchronized (ItemActivity.this.bodyHtmls) {
+                        ItemActivity.this.bodyHtmls.put(itemId, html);
+                    }
+                }
+            }
+        });
+    }
+
     private boolean pinExists() {
         if (this.currentItem == null) {
             return false;
@@ -110,10 +110,6 @@ public class ItemActivityHelper extends ActivityHelper {
                 values.put(Item._UNREAD, 0);
                 cr.update(Item.CONTENT_URI, values, new String(where), null);
 
-                values.clear();
-                values.put(Subscription._UNREAD_COUNT, 0);
-                cr.update(itemable.getSubUri(), values, null, null);
-
                 itemable.getHandler().post(new Runnable() {
                     public void run() {
                         itemable.initItems();
@@ -145,11 +141,6 @@ public class ItemActivityHelper extends ActivityHelper {
 
                 ContentResolver cr = activity.getContentResolver();
                 cr.delete(Item.CONTENT_URI, new String(where), null);
-                if (all) {
-                    ContentValues values = new ContentValues();
-                    values.put(Subscription._UNREAD_COUNT, 0);
-                    cr.update(itemable.getSubUri(), values, null, null);
-                }
 
                 itemable.getHandler().post(new Runnable() {
                     public void run() {
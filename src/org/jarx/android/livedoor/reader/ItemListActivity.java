@@ -17,7 +17,6 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.database.Cursor;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
@@ -30,6 +29,7 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.inputmethod.InputMethodManager;
+import android.widget.AbsListView;
 import android.widget.ImageView;
 import android.widget.ListView;
 import android.widget.ResourceCursorAdapter;
@@ -42,16 +42,30 @@ public class ItemListActivity extends ListActivity
     private static final int DIALOG_MOVE = 3;
     private static final int REQUEST_ITEM_ID = 1;
     private static final int REQUEST_PREFERENCES = 1;
+    private static final int ITEMS_PAGE_SIZE = 100;
 
     private final Handler handler = new Handler();
     private Uri subUri;
     private Subscription sub;
     private long lastItemId;
     private ItemsAdapter itemsAdapter;
+    // NOTE: the managed cursor of the adapter, replaced by each page
+    private Cursor itemsCursor;
     private ReaderService readerService;
     private ReaderManager readerManager;
     private String keyword;
     private boolean unreadOnly;
+    // NOTE: items from the newest to the low id are listed, 0 if no item
+    private long listLowId;
+    private boolean hasMoreItems;
+    private boolean loadingMoreItems;
+
+    private final Runnable loadMoreItemsRunner = new Runnable() {
+        public void run() {
+            ItemListActivity.this.loadingMoreItems = false;
+            loadMoreItems(ITEMS_PAGE_SIZE);
+        }
+    };
 
     private ServiceConnection serviceConn = new ServiceConnection() {
         @Override
@@ -76,7 +90,14 @@ public class ItemListActivity extends ListActivity
     private BroadcastReceiver refreshReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
-            ItemListActivity.this.initListAdapter();
+            Uri uri = ItemListActivity.this.subUri;
+            SyncEvent event = SyncEvent.fromIntent(intent);
+            if (event == null) {
+                ItemListActivity.this.initListAdapter();
+            } else if (uri != null && event.contains(ContentUris.parseId(uri))) {
+                // NOTE: items are requeried by the managed cursor
+                ItemListActivity.this.bindSubTitleView(true);
+            }
         }
     };
 
@@ -100,12 +121,7 @@ public class ItemListActivity extends ListActivity
         this.subUri = ContentUris.withAppendedId(Subscription.CONTENT_URI, subId);
         bindSubTitleView(true);
         ImageView iconView = (ImageView) findViewById(R.id.sub_icon);
-        Bitmap icon = sub.getIcon(this);
-        if (icon == null) {
-            iconView.setImageResource(R.drawable.item_read);
-        } else {
-            iconView.setImageBitmap(icon);
-        }
+        IconCache.getInstance(this).bind(iconView, sub);
 
         final TextView keywordEdit = (TextView) findViewById(R.id.edit_keyword);
         keywordEdit.setOnKeyListener(new View.OnKeyListener() {
@@ -125,6 +141,22 @@ public class ItemListActivity extends ListActivity
             }
         });
 
+        getListView().setOnScrollListener(new AbsListView.OnScrollListener() {
+            public void onScroll(AbsListView view, int firstVisibleItem,
+                    int visibleItemCount, int totalItemCount) {
+                // NOTE: loads the next page before reaching the end
+                if (totalItemCount > 0 && ItemListActivity.this.hasMoreItems
+                        && !ItemListActivity.this.loadingMoreItems
+                        && firstVisibleItem + visibleItemCount
+                            >= totalItemCount - (ITEMS_PAGE_SIZE / 4)) {
+                    ItemListActivity.this.loadingMoreItems = true;
+                    handler.post(loadMoreItemsRunner);
+                }
+            }
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+        });
+
         initListAdapter();
     }
 
@@ -311,12 +343,26 @@ public class ItemListActivity extends ListActivity
     }
 
     private ActivityHelper.Where createBaseWhere() {
-        String keyword = this.keyword;
+        return createBaseWhere(true);
+    }
+
+    /**
+     * @param withKeyword false for the search uri, the keyword is the query
+     */
+    private ActivityHelper.Where createBaseWhere(boolean withKeyword) {
+        String keyword = withKeyword ? this.keyword: null;
+        String matchQuery = Item.toMatchQuery(keyword);
         String[] args = null;
         StringBuilder buff = new StringBuilder(
             (keyword == null) ? 64: 128 + keyword.length());
         buff.append(Item._SUBSCRIPTION_ID).append(" = ").append(this.sub.getId());
-        if (keyword != null && keyword.length() > 0) {
+        if (matchQuery != null) {
+            buff.append(" and ").append(Item._ID).append(" in (select docid from ");
+            buff.append(Item.FTS_TABLE_NAME).append(" where ");
+            buff.append(Item.FTS_TABLE_NAME).append(" match ?)");
+            args = new String[]{matchQuery};
+        } else if (keyword != null && keyword.length() > 0) {
+            // NOTE: words not split by the fts tokenizer, like CJK
             buff.append(" and (");
             buff.append(Item._TITLE).append(" like ? escape '\\'");
             buff.append(" or ");
@@ -367,16 +413,63 @@ public class ItemListActivity extends ListActivity
     }
 
     private void initListAdapter() {
-        ActivityHelper.Where where = createBaseWhere();
-        String orderby = Item._ID + " desc";
-        Cursor cursor = managedQuery(Item.CONTENT_URI, null,
-            new String(where.buff), where.args, orderby);;
+        this.listLowId = 0;
+        this.hasMoreItems = true;
+        loadMoreItems(ITEMS_PAGE_SIZE);
+    }
+
+    private Uri getItemsUri() {
+        String matchQuery = Item.toMatchQuery(this.keyword);
+        if (matchQuery == null) {
+            return Item.CONTENT_URI;
+        }
+        // NOTE: in the order of ItemActivity, not ranked. summaries are snippets
+        return Item.SEARCH_URI.buildUpon().appendQueryParameter(
+            Item.SEARCH_QUERY_PARAM, matchQuery).build();
+    }
+
+    private ActivityHelper.Where createItemsWhere() {
+        // NOTE: the keyword is the query of the search uri
+        boolean search = (Item.toMatchQuery(this.keyword) != null);
+        return createBaseWhere(!search);
+    }
+
+    /**
+     * lists more count of older items. the list is requeried by the
+     * lowest id of the page, not by offset, new items are not skipped.
+     */
+    private void loadMoreItems(int count) {
+        if (!this.hasMoreItems) {
+            return;
+        }
+        Uri uri = getItemsUri();
+        ActivityHelper.Where where = createItemsWhere();
+        String orderby = Item.TABLE_NAME + "." + Item._ID + " desc";
+
+        Cursor page = getContentResolver().query(
+            Item.pageUri(uri, 0, this.listLowId, count), Item.SELECT_ID,
+            new String(where.buff), where.args, orderby);
+        try {
+            this.hasMoreItems = (page.getCount() == count);
+            if (page.moveToLast()) {
+                this.listLowId = page.getLong(0);
+            }
+        } finally {
+            page.close();
+        }
+
+        long afterId = (this.listLowId > 0) ? this.listLowId - 1: 0;
+        Cursor cursor = managedQuery(Item.pageUri(uri, afterId, 0, 0),
+            Item.SELECT_HEADER, new String(where.buff), where.args, orderby);
         if (this.itemsAdapter == null) {
             this.itemsAdapter = new ItemsAdapter(this, cursor);
             setListAdapter(this.itemsAdapter);
         } else {
+            // NOTE: the replaced cursor is closed by the adapter
+            stopManagingCursor(this.itemsCursor);
             this.itemsAdapter.changeCursor(cursor);
         }
+        this.itemsCursor = cursor;
     }
 
     private void moveToItemId(long itemId) {
@@ -392,6 +485,10 @@ public class ItemListActivity extends ListActivity
         cursor.moveToNext();
         int pos = cursor.getInt(0);
         cursor.close();
+        int listCount = this.itemsAdapter.getCount();
+        if (pos >= listCount) {
+            loadMoreItems(pos - listCount + ITEMS_PAGE_SIZE);
+        }
         getListView().setSelectionFromTop(pos, 48);
     }
 
@@ -406,7 +503,7 @@ public class ItemListActivity extends ListActivity
         if (this.itemsAdapter == null) {
             return;
         }
-        Item.FilterCursor cursor = this.itemsAdapter.getItemCursor();
+        Item.HeaderCursor cursor = this.itemsAdapter.getItemCursor();
         int pos = cursor.getPosition();
         cursor.moveToFirst();
         while (cursor.moveToNext()) {
@@ -425,7 +522,7 @@ public class ItemListActivity extends ListActivity
         if (this.itemsAdapter == null) {
             return;
         }
-        Item.FilterCursor cursor = this.itemsAdapter.getItemCursor();
+        Item.HeaderCursor cursor = this.itemsAdapter.getItemCursor();
         int pos = cursor.getPosition();
         cursor.moveToLast();
         while (cursor.moveToPrevious()) {
@@ -455,10 +552,6 @@ public class ItemListActivity extends ListActivity
                 values.put(Item._UNREAD, 0);
                 cr.update(Item.CONTENT_URI, values, new String(where), null);
 
-                values.clear();
-                values.put(Subscription._UNREAD_COUNT, 0);
-                cr.update(ItemListActivity.this.subUri, values, null, null);
-
                 handler.post(new Runnable() {
                     public void run() {
                         initListAdapter();
@@ -473,13 +566,16 @@ public class ItemListActivity extends ListActivity
 
     private class ItemsAdapter extends ResourceCursorAdapter {
 
+        // NOTE: reused for binding rows
+        private final Item rowItem = new Item();
+
         private ItemsAdapter(Context context, Cursor cursor) {
-            super(context, R.layout.item_list_row,
-                new Item.FilterCursor(cursor), false);
+            super(context, R.layout.item_list_row, null, false);
+            changeCursor(cursor);
         }
 
-        private Item.FilterCursor getItemCursor() {
-            return (Item.FilterCursor) getCursor();
+        private Item.HeaderCursor getItemCursor() {
+            return (Item.HeaderCursor) getCursor();
         }
 
         private void closeCursor() {
@@ -491,12 +587,12 @@ public class ItemListActivity extends ListActivity
 
         @Override
         public void changeCursor(Cursor cursor) {
-            super.changeCursor(new Item.FilterCursor(cursor));
+            super.changeCursor(new Item.HeaderCursor(cursor, this.rowItem));
         }
 
         @Override
         public void bindView(View view, Context context, Cursor cursor) {
-            Item.FilterCursor itemCursor = (Item.FilterCursor) cursor;
+            Item.HeaderCursor itemCursor = (Item.HeaderCursor) cursor;
 
             ImageView iconView = (ImageView) view.findViewById(R.id.icon_read_unread);
             TextView titleView = (TextView) view.findViewById(R.id.title);
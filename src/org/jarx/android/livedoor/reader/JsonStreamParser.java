@@ -0,0 +1,624 @@
+package org.jarx.android.livedoor.reader;
+
+import java.io.IOException;
+import java.io.Reader;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Streaming JSON parser for the reader api responses.
+ *
+ * Object keys are matched to the ids of {@link Keys} without creating
+ * strings, numbers are parsed to primitives and primitives of unknown
+ * keys are skipped.
+ */
+public class JsonStreamParser {
+
+    /** key of the root value and array elements of known keys */
+    public static final int NO_KEY = -1;
+    /** key not in the keys, primitives of the key are not handled */
+    public static final int UNKNOWN_KEY = -2;
+
+    private static final int EOF = -1;
+    private static final int BUFF_SIZE = 8192;
+
+    public interface Handler {
+
+        Keys getKeys();
+
+        void startJSON() throws ParseException, IOException;
+
+        void endJSON() throws ParseException, IOException;
+
+        boolean startObject(int key) throws ParseException, IOException;
+
+        boolean endObject() throws ParseException, IOException;
+
+        boolean startArray(int key) throws ParseException, IOException;
+
+        boolean endArray() throws ParseException, IOException;
+
+        /** the value is reused, valid only in the call */
+        boolean primitive(int key, Value value) throws ParseException, IOException;
+    }
+
+    public static abstract class HandlerAdapter implements Handler {
+
+        private final Keys keys;
+
+        protected HandlerAdapter(Keys keys) {
+            this.keys = keys;
+        }
+
+        public Keys getKeys() {
+            return this.keys;
+        }
+
+        public void startJSON() throws ParseException, IOException {
+        }
+
+        public void endJSON() throws ParseException, IOException {
+        }
+
+        public boolean startObject(int key) throws ParseException, IOException {
+            return true;
+        }
+
+        public boolean endObject() throws ParseException, IOException {
+            return true;
+        }
+
+        public boolean startArray(int key) throws ParseException, IOException {
+            return true;
+        }
+
+        public boolean endArray() throws ParseException, IOException {
+            return true;
+        }
+
+        public boolean primitive(int key, Value value)
+                throws ParseException, IOException {
+            return true;
+        }
+    }
+
+    /**
+     * Known object keys, the id of a key is the index in the constructor.
+     */
+    public static final class Keys {
+
+        private final char[][] names;
+        private final int[] table;
+        private final int mask;
+
+        public Keys(String ... names) {
+            this.names = new char[names.length][];
+            int capacity = 4;
+            while (capacity < names.length * 2) {
+                capacity <<= 1;
+            }
+            this.table = new int[capacity];
+            this.mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                this.table[i] = UNKNOWN_KEY;
+            }
+            for (int id = 0; id < names.length; id++) {
+                char[] name = names[id].toCharArray();
+                this.names[id] = name;
+                int i = hash(name, name.length) & this.mask;
+                while (this.table[i] != UNKNOWN_KEY) {
+                    i = (i + 1) & this.mask;
+                }
+                this.table[i] = id;
+            }
+        }
+
+        public int size() {
+            return this.names.length;
+        }
+
+        public String getName(int id) {
+            return new String(this.names[id]);
+        }
+
+        public int getId(String name) {
+            char[] chars = name.toCharArray();
+            return getId(chars, chars.length, hash(chars, chars.length));
+        }
+
+        private int getId(char[] chars, int length, int hash) {
+            int i = hash & this.mask;
+            int id;
+            while ((id = this.table[i]) != UNKNOWN_KEY) {
+                char[] name = this.names[id];
+                if (name.length == length && equals(name, chars, length)) {
+                    return id;
+                }
+                i = (i + 1) & this.mask;
+            }
+            return UNKNOWN_KEY;
+        }
+
+        private static int hash(char[] chars, int length) {
+            int h = 0;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + chars[i];
+            }
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean equals(char[] a, char[] b, int length) {
+            for (int i = 0; i < length; i++) {
+                if (a[i] != b[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Primitive value, converted like {@link Utils} asXxx methods.
+     */
+    public static final class Value {
+
+        public static final int NULL = 0;
+        public static final int STRING = 1;
+        public static final int LONG = 2;
+        public static final int DOUBLE = 3;
+        public static final int BOOLEAN = 4;
+
+        private int type;
+        private long longValue;
+        private double doubleValue;
+        private char[] chars = new char[256];
+        private int length;
+
+        private Value() {
+        }
+
+        public int getType() {
+            return this.type;
+        }
+
+        public boolean isNull() {
+            return this.type == NULL;
+        }
+
+        public long asLong() {
+            return asLong(0);
+        }
+
+        public long asLong(long defaultValue) {
+            switch (this.type) {
+            case LONG:
+                return this.longValue;
+            case DOUBLE:
+                return (long) this.doubleValue;
+            case STRING:
+                return parseLong(defaultValue);
+            default:
+                return defaultValue;
+            }
+        }
+
+        public int asInt() {
+            return asInt(0);
+        }
+
+        public int asInt(int defaultValue) {
+            long value = asLong(Long.MIN_VALUE);
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                return defaultValue;
+            }
+            return (int) value;
+        }
+
+        public boolean asBoolean() {
+            switch (this.type) {
+            case BOOLEAN:
+            case LONG:
+                return this.longValue != 0;
+            case STRING:
+                return "true".equals(asString());
+            default:
+                return false;
+            }
+        }
+
+        /** returns a trimmed string, or null if the value is null */
+        public String asString() {
+            switch (this.type) {
+            case NULL:
+                return null;
+            case STRING:
+                int start = 0;
+                int end = this.length;
+                while (start < end && this.chars[start] <= ' ') {
+                    start++;
+                }
+                while (start < end && this.chars[end - 1] <= ' ') {
+                    end--;
+                }
+                return new String(this.chars, start, end - start);
+            case LONG:
+                return Long.toString(this.longValue);
+            case DOUBLE:
+                return Double.toString(this.doubleValue);
+            default:
+                return (this.longValue != 0) ? "true": "false";
+            }
+        }
+
+        public int length() {
+            return (this.type == STRING) ? this.length: 0;
+        }
+
+        public String toString() {
+            return String.valueOf(asString());
+        }
+
+        private long parseLong(long defaultValue) {
+            int i = 0;
+            int end = this.length;
+            while (i < end && this.chars[i] <= ' ') {
+                i++;
+            }
+            while (i < end && this.chars[end - 1] <= ' ') {
+                end--;
+            }
+            boolean negative = false;
+            if (i < end && (this.chars[i] == '-' || this.chars[i] == '+')) {
+                negative = (this.chars[i++] == '-');
+            }
+            if (i == end) {
+                return defaultValue;
+            }
+            long value = 0;
+            for (; i < end; i++) {
+                int d = this.chars[i] - '0';
+                if (d < 0 || d > 9 || value > (Long.MAX_VALUE - d) / 10) {
+                    return defaultValue;
+                }
+                value = value * 10 + d;
+            }
+            return negative ? -value: value;
+        }
+
+        private void append(char c) {
+            if (this.length == this.chars.length) {
+                char[] newChars = new char[this.chars.length * 2];
+                System.arraycopy(this.chars, 0, newChars, 0, this.length);
+                this.chars = newChars;
+            }
+            this.chars[this.length++] = c;
+        }
+    }
+
+    private final char[] buff = new char[BUFF_SIZE];
+    private final Value value = new Value();
+    private char[] keyChars = new char[64];
+    private Reader in;
+    private Keys keys;
+    private int pos;
+    private int limit;
+    private int position;
+
+    public JsonStreamParser() {
+    }
+
+    /**
+     * Parses the root value. Parsing is stopped when the handler
+     * returns false.
+     */
+    public void parse(Reader in, Handler handler)
+            throws ParseException, IOException {
+        this.in = in;
+        this.keys = handler.getKeys();
+        this.pos = 0;
+        this.limit = 0;
+        this.position = 0;
+        try {
+            handler.startJSON();
+            int c = skipWhitespaces();
+            if (c != EOF && parseValue(c, NO_KEY, handler)) {
+                c = skipWhitespaces();
+                if (c != EOF) {
+                    throw unexpected(c);
+                }
+            }
+            handler.endJSON();
+        } finally {
+            this.in = null;
+            this.keys = null;
+        }
+    }
+
+    private boolean parseValue(int c, int key, Handler handler)
+            throws ParseException, IOException {
+        switch (c) {
+        case '{':
+            return parseObject(key, handler);
+        case '[':
+            return parseArray(key, handler);
+        case '"':
+            if (key == UNKNOWN_KEY) {
+                skipString();
+                return true;
+            }
+            readString();
+            return handler.primitive(key, this.value);
+        case 't':
+            expect("rue");
+            return primitive(key, Value.BOOLEAN, 1, handler);
+        case 'f':
+            expect("alse");
+            return primitive(key, Value.BOOLEAN, 0, handler);
+        case 'n':
+            expect("ull");
+            return primitive(key, Value.NULL, 0, handler);
+        default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                readNumber(c);
+                return (key == UNKNOWN_KEY) || handler.primitive(key, this.value);
+            }
+            throw unexpected(c);
+        }
+    }
+
+    private boolean primitive(int key, int type, long longValue, Handler handler)
+            throws ParseException, IOException {
+        if (key == UNKNOWN_KEY) {
+            return true;
+        }
+        this.value.type = type;
+        this.value.longValue = longValue;
+        this.value.length = 0;
+        return handler.primitive(key, this.value);
+    }
+
+    private boolean parseObject(int key, Handler handler)
+            throws ParseException, IOException {
+        if (!handler.startObject(key)) {
+            return false;
+        }
+        int c = skipWhitespaces();
+        if (c != '}') {
+            while (true) {
+                if (c != '"') {
+                    throw unexpected(c);
+                }
+                int entryKey = readKey();
+                c = skipWhitespaces();
+                if (c != ':') {
+                    throw unexpected(c);
+                }
+                if (!parseValue(skipWhitespaces(), entryKey, handler)) {
+                    return false;
+                }
+                c = skipWhitespaces();
+                if (c == '}') {
+                    break;
+                } else if (c != ',') {
+                    throw unexpected(c);
+                }
+                c = skipWhitespaces();
+            }
+        }
+        return handler.endObject();
+    }
+
+    private boolean parseArray(int key, Handler handler)
+            throws ParseException, IOException {
+        if (!handler.startArray(key)) {
+            return false;
+        }
+        // NOTE: elements of an unknown key are unknown too
+        int elementKey = (key == UNKNOWN_KEY) ? UNKNOWN_KEY: NO_KEY;
+        int c = skipWhitespaces();
+        if (c != ']') {
+            while (true) {
+                if (!parseValue(c, elementKey, handler)) {
+                    return false;
+                }
+                c = skipWhitespaces();
+                if (c == ']') {
+                    break;
+                } else if (c != ',') {
+                    throw unexpected(c);
+                }
+                c = skipWhitespaces();
+            }
+        }
+        return handler.endArray();
+    }
+
+    private int readKey() throws ParseException, IOException {
+        int length = 0;
+        int h = 0;
+        int c;
+        while ((c = read()) != '"') {
+            if (c == '\\') {
+                c = readEscaped();
+            } else if (c == EOF) {
+                throw unexpected(c);
+            }
+            if (length == this.keyChars.length) {
+                char[] newChars = new char[length * 2];
+                System.arraycopy(this.keyChars, 0, newChars, 0, length);
+                this.keyChars = newChars;
+            }
+            this.keyChars[length++] = (char) c;
+            h = 31 * h + c;
+        }
+        return this.keys.getId(this.keyChars, length, h ^ (h >>> 16));
+    }
+
+    private void readString() throws ParseException, IOException {
+        Value v = this.value;
+        v.type = Value.STRING;
+        v.length = 0;
+        while (true) {
+            // NOTE: copy unescaped runs from the buffer at once
+            int start = this.pos;
+            int end = this.limit;
+            int i = start;
+            char[] b = this.buff;
+            while (i < end && b[i] != '"' && b[i] != '\\') {
+                i++;
+            }
+            int n = i - start;
+            if (n > 0) {
+                if (v.length + n > v.chars.length) {
+                    char[] newChars = new char[Math.max(v.chars.length * 2, v.length + n)];
+                    System.arraycopy(v.chars, 0, newChars, 0, v.length);
+                    v.chars = newChars;
+                }
+                System.arraycopy(b, start, v.chars, v.length, n);
+                v.length += n;
+                this.pos = i;
+                this.position += n;
+            }
+            int c = read();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                v.append((char) readEscaped());
+            } else if (c == EOF) {
+                throw unexpected(c);
+            } else {
+                v.append((char) c);
+            }
+        }
+    }
+
+    private void skipString() throws ParseException, IOException {
+        int c;
+        while ((c = read()) != '"') {
+            if (c == '\\') {
+                readEscaped();
+            } else if (c == EOF) {
+                throw unexpected(c);
+            }
+        }
+    }
+
+    private int readEscaped() throws ParseException, IOException {
+        int c = read();
+        switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+            return c;
+        case 'b':
+            return '\b';
+        case 'f':
+            return '\f';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 't':
+            return '\t';
+        case 'u':
+            int u = 0;
+            for (int i = 0; i < 4; i++) {
+                c = read();
+                int d = Character.digit(c, 16);
+                if (c == EOF || d < 0) {
+                    throw unexpected(c);
+                }
+                u = (u << 4) | d;
+            }
+            return u;
+        default:
+            throw unexpected(c);
+        }
+    }
+
+    private void readNumber(int c) throws ParseException, IOException {
+        Value v = this.value;
+        v.length = 0;
+        boolean integral = true;
+        while (true) {
+            v.append((char) c);
+            if (c == '.' || c == 'e' || c == 'E') {
+                integral = false;
+            }
+            c = peek();
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+'
+                    || c == '.' || c == 'e' || c == 'E') {
+                read();
+            } else {
+                break;
+            }
+        }
+        if (integral) {
+            v.type = Value.STRING;
+            long longValue = v.parseLong(Long.MIN_VALUE);
+            if (longValue != Long.MIN_VALUE) {
+                v.type = Value.LONG;
+                v.longValue = longValue;
+                return;
+            }
+        }
+        try {
+            v.doubleValue = Double.parseDouble(new String(v.chars, 0, v.length));
+            v.type = Value.DOUBLE;
+        } catch (NumberFormatException e) {
+            throw new ParseException(this.position,
+                ParseException.ERROR_UNEXPECTED_TOKEN,
+                new String(v.chars, 0, v.length));
+        }
+    }
+
+    private void expect(String rest) throws ParseException, IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            int c = read();
+            if (c != rest.charAt(i)) {
+                throw unexpected(c);
+            }
+        }
+    }
+
+    private int skipWhitespaces() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (this.pos == this.limit && !fill()) {
+            return EOF;
+        }
+        this.position++;
+        return this.buff[this.pos++];
+    }
+
+    private int peek() throws IOException {
+        if (this.pos == this.limit && !fill()) {
+            return EOF;
+        }
+        return this.buff[this.pos];
+    }
+
+    private boolean fill() throws IOException {
+        int len = this.in.read(this.buff, 0, this.buff.length);
+        if (len <= 0) {
+            return false;
+        }
+        this.pos = 0;
+        this.limit = len;
+        return true;
+    }
+
+    private ParseException unexpected(int c) {
+        if (c == EOF) {
+            return new ParseException(this.position,
+                ParseException.ERROR_UNEXPECTED_TOKEN, null);
+        }
+        return new ParseException(this.position - 1,
+            ParseException.ERROR_UNEXPECTED_CHAR, Character.valueOf((char) c));
+    }
+}
@@ -112,11 +112,13 @@ public class LoginActivity extends Activity {
 
         new Thread() {
             public void run() {
-                ReaderManager rm = ReaderManager.newInstance(c);
+                ReaderManager rm = ReaderManager.getInstance(c);
                 boolean success = false;
                 try {
-                    if (rm.login(loginId, password)) {
+                    // NOTE: the session is replaced only if logined
+                    if (rm.loginAgain(loginId, password)) {
                         ReaderPreferences.setLoginIdPassword(c, loginId, password);
+                        ReaderPreferences.setLastServerUnreadCount(c, -1);
                         success = true;
                     } else {
                         showToast(getText(R.string.msg_login_fail));
@@ -0,0 +1,107 @@
+package org.jarx.android.livedoor.reader;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash set of primitive longs, without boxing.
+ */
+public final class LongHashSet {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] table;
+    private boolean hasZero;
+    private int size;
+    private int threshold;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        this.table = new long[capacity];
+        this.threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean contains(long value) {
+        if (value == 0) {
+            return this.hasZero;
+        }
+        long[] t = this.table;
+        int mask = t.length - 1;
+        int i = hash(value) & mask;
+        while (t[i] != 0) {
+            if (t[i] == value) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public boolean add(long value) {
+        if (value == 0) {
+            if (this.hasZero) {
+                return false;
+            }
+            this.hasZero = true;
+            this.size++;
+            return true;
+        }
+        if (!put(this.table, value)) {
+            return false;
+        }
+        if (++this.size > this.threshold) {
+            rehash(this.table.length << 1);
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(this.table, 0);
+        this.hasZero = false;
+        this.size = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] t = new long[capacity];
+        for (long value: this.table) {
+            if (value != 0) {
+                put(t, value);
+            }
+        }
+        this.table = t;
+        this.threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static boolean put(long[] t, long value) {
+        int mask = t.length - 1;
+        int i = hash(value) & mask;
+        while (t[i] != 0) {
+            if (t[i] == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        t[i] = value;
+        return true;
+    }
+
+    private static int hash(long value) {
+        int h = (int) (value ^ (value >>> 32));
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+}
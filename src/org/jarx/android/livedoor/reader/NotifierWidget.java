@@ -38,6 +38,10 @@ public class NotifierWidget extends AppWidgetProvider {
         if (action != null && (
                 action.equals(ReaderService.ACTION_SYNC_SUBS_FINISHED)
                     || action.equals(ReaderService.ACTION_UNREAD_MODIFIED))) {
+            SyncEvent event = SyncEvent.fromIntent(intent);
+            if (event != null && event.isEmpty()) {
+                return;
+            }
             int unreadCount = ReaderManager.countUnread(context);
             RemoteViews views = createRemoteViews(context, unreadCount);
 
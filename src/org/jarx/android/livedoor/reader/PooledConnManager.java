@@ -0,0 +1,125 @@
+package org.jarx.android.livedoor.reader;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpParams;
+
+/**
+ * Connection manager keeping statistics of leased connections and
+ * waiting time for a connection.
+ */
+public class PooledConnManager extends ThreadSafeClientConnManager {
+
+    public static class Stats {
+
+        private final int leased;
+        private final int available;
+        private final long requests;
+        private final long waitMillis;
+        private final long maxWaitMillis;
+
+        private Stats(int leased, int available, long requests,
+                long waitMillis, long maxWaitMillis) {
+            this.leased = leased;
+            this.available = available;
+            this.requests = requests;
+            this.waitMillis = waitMillis;
+            this.maxWaitMillis = maxWaitMillis;
+        }
+
+        public int getLeased() {
+            return this.leased;
+        }
+
+        /** idle connections kept alive in the pool */
+        public int getAvailable() {
+            return this.available;
+        }
+
+        public long getRequests() {
+            return this.requests;
+        }
+
+        public long getWaitMillis() {
+            return this.waitMillis;
+        }
+
+        public long getMaxWaitMillis() {
+            return this.maxWaitMillis;
+        }
+
+        public long getAverageWaitMillis() {
+            return (this.requests == 0) ? 0: this.waitMillis / this.requests;
+        }
+
+        public String toString() {
+            return "PoolStats{leased=" + this.leased
+                + ",available=" + this.available
+                + ",requests=" + this.requests
+                + ",waitMillis=" + this.waitMillis
+                + ",maxWaitMillis=" + this.maxWaitMillis + "}";
+        }
+    }
+
+    private final Set<ManagedClientConnection> leased
+        = new HashSet<ManagedClientConnection>();
+    private long requests;
+    private long waitMillis;
+    private long maxWaitMillis;
+
+    public PooledConnManager(HttpParams params, SchemeRegistry reg) {
+        super(params, reg);
+    }
+
+    @Override
+    public ClientConnectionRequest requestConnection(HttpRoute route,
+            Object state) {
+        final ClientConnectionRequest req = super.requestConnection(route, state);
+        return new ClientConnectionRequest() {
+            public ManagedClientConnection getConnection(long timeout,
+                    TimeUnit unit) throws InterruptedException,
+                    ConnectionPoolTimeoutException {
+                long start = System.currentTimeMillis();
+                ManagedClientConnection conn = req.getConnection(timeout, unit);
+                leased(conn, System.currentTimeMillis() - start);
+                return conn;
+            }
+
+            public void abortRequest() {
+                req.abortRequest();
+            }
+        };
+    }
+
+    @Override
+    public void releaseConnection(ManagedClientConnection conn,
+            long validDuration, TimeUnit unit) {
+        synchronized (this) {
+            this.leased.remove(conn);
+        }
+        super.releaseConnection(conn, validDuration, unit);
+    }
+
+    private synchronized void leased(ManagedClientConnection conn, long wait) {
+        this.leased.add(conn);
+        this.requests++;
+        this.waitMillis += wait;
+        this.maxWaitMillis = Math.max(this.maxWaitMillis, wait);
+    }
+
+    public Stats getStats() {
+        int total = getConnectionsInPool();
+        synchronized (this) {
+            int leasedCount = this.leased.size();
+            return new Stats(leasedCount, Math.max(total - leasedCount, 0),
+                this.requests, this.waitMillis, this.maxWaitMillis);
+        }
+    }
+}
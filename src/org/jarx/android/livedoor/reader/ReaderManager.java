@@ -1,7 +1,5 @@
 package org.jarx.android.livedoor.reader;
 
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -9,7 +7,12 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import org.json.simple.parser.ContentHandler;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.http.HttpStatus;
 import org.json.simple.parser.ParseException;
 import android.content.BroadcastReceiver;
 import android.content.ContentResolver;
@@ -19,12 +22,9 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.database.Cursor;
-import android.graphics.BitmapFactory;
-import android.graphics.Bitmap;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
-import android.text.TextUtils;
 import android.util.Log;
 import static org.jarx.android.livedoor.reader.Utils.*; 
 
@@ -34,21 +34,57 @@ public class ReaderManager {
     public static final int ITEM_SYNC_UNREAD_ONLY = 0;
     public static final int ITEM_SYNC_WITH_READ_IF_NO_UNREAD = 1;
     public static final int ITEM_SYNC_WITH_READ = 2;
+    public static final int ITEM_BATCH_SIZE = 50;
+    public static final int ITEM_BATCH_CHARS = 256 * 1024;
+    public static final long PROBE_MAX_SKIP_TIME = 6 * 60 * 60 * 1000;
+    public static final long SYNC_TIME_BUDGET = 5 * 60 * 1000;
+    public static final long CHECKPOINT_EXPIRE_TIME = 60 * 60 * 1000;
 
     private static final String TAG = "ReaderManager";
 
-    public static ReaderManager newInstance(Context context) {
-        return new ReaderManager(context);
+    // NOTE: key ids are the indexes, see handlers
+    private static final JsonStreamParser.Keys SUBS_KEYS = new JsonStreamParser.Keys(
+        "subscribe_id", "title", "icon", "link", "folder", "rate",
+        "subscribers_count", "modified_on", "unread_count");
+    // NOTE: the columns of the subscription list, see SubsHandler.store
+    private static final String[] SUBS_LISTED_COLUMNS = {
+        Subscription._ID, Subscription._TITLE, Subscription._ICON_URI,
+        Subscription._URI, Subscription._FOLDER, Subscription._RATE,
+        Subscription._SUBSCRIBERS_COUNT, Subscription._MODIFIED_TIME,
+        Subscription._DISABLED
+    };
+    private static final JsonStreamParser.Keys ITEMS_KEYS = new JsonStreamParser.Keys(
+        "items", "id", "title", "body", "author", "link", "created_on",
+        "modified_on");
+    private static final JsonStreamParser.Keys PINS_KEYS = new JsonStreamParser.Keys(
+        "link", "title", "created_on");
+
+    private static ReaderManager instance;
+
+    /**
+     * returns the manager shared in the process, the service, the
+     * activities and the icon fetcher use the same login session and
+     * connection pool.
+     */
+    public static synchronized ReaderManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new ReaderManager(context.getApplicationContext());
+        }
+        return instance;
     }
 
-    private final ApiClient client = new ApiClient();
+    private final ApiClient client;
     private final Context context;
 
-    public ReaderManager(Context context) {
+    private ReaderManager(Context context) {
         this.context = context;
+        // NOTE: sync workers over the max requests wait for a connection
+        this.client = new ApiClient(
+            ReaderPreferences.getMaxRequestsPerHost(context));
+        this.client.setSessionStore(new SessionStore(context));
     }
 
-    public int sync() throws IOException, ReaderException {
+    public SyncResult sync() throws IOException, ReaderException {
         if (!isLogined()) {
             login();
         }
@@ -57,39 +93,58 @@ public class ReaderManager {
         String debugPrefix = "sync " + (unreadOnly ? "unread only": "all");
         Log.d(TAG, debugPrefix + " started.");
 
-        SubsHandler subsHandler = new SubsHandler();
-        syncSubs(unreadOnly, subsHandler);
-
-        ReaderException firstError = null;
-        int syncCount = 0;
-        String subWhere = Subscription._MODIFIED_TIME
-            + " <> " + Subscription._ITEM_SYNC_TIME;
+        // NOTE: resumes the subscription list of the interrupted sync
         ContentResolver cr = this.context.getContentResolver();
+        long now = System.currentTimeMillis();
+        SyncCheckpoint checkpoint = SyncCheckpoint.load(cr, SyncCheckpoint.SUBS_ID);
+        if (checkpoint == null || checkpoint.isUnreadOnly() != unreadOnly
+                || checkpoint.getCreatedTime() + CHECKPOINT_EXPIRE_TIME < now) {
+            SyncCheckpoint.deleteCreatedBefore(cr, now - CHECKPOINT_EXPIRE_TIME);
+            checkpoint = new SyncCheckpoint(SyncCheckpoint.SUBS_ID);
+            checkpoint.setUnreadOnly(unreadOnly);
+        } else {
+            Log.d(TAG, debugPrefix + " resumed from " + checkpoint);
+        }
+
+        SubsHandler subsHandler = new SubsHandler(new SyncEvent());
+        if (!checkpoint.isDone()) {
+            subsHandler.checkpoint = checkpoint;
+            syncSubs(unreadOnly, subsHandler);
+            checkpoint.setDone(true);
+            SyncCheckpoint.save(cr, checkpoint);
+        }
+
+        // NOTE: modified subscriptions not due are synced on later syncs
+        List<Subscription> subs = new ArrayList<Subscription>();
         Subscription.FilterCursor cursor = new Subscription.FilterCursor(
-            cr.query(Subscription.CONTENT_URI, null, subWhere, null, null));
+            cr.query(Subscription.CONTENT_URI, null, dueSubsWhere(), null, null));
         try {
             while (cursor.moveToNext()) {
-                Subscription sub = cursor.getSubscription();
-                Log.d(TAG, "sync items for subscription " + sub.getUri());
-                try {
-                    syncCount += syncItems(sub, null, unreadOnly);
-                } catch (ReaderException e) {
-                    if (firstError == null) {
-                        firstError = e;
-                    }
-                }
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    break;
-                }
+                subs.add(cursor.getSubscription());
             }
         } finally {
             cursor.close();
         }
+        Collections.sort(subs, SyncScheduler.PRIORITY_COMPARATOR);
+
+        int concurrency = ReaderPreferences.getSyncConcurrency(this.context);
+        long deadline = System.currentTimeMillis() + SYNC_TIME_BUDGET;
+        SyncEvent itemsEvent = new SyncEvent();
+        SyncResult result = syncItems(subs, unreadOnly, concurrency, deadline,
+            itemsEvent);
+        if (!itemsEvent.isEmpty()) {
+            this.context.sendBroadcast(
+                itemsEvent.toIntent(ReaderService.ACTION_UNREAD_MODIFIED));
+        }
+        // NOTE: the list is kept done until items of all due subscriptions
+        // are synced, failed or deferred ones are resumed without listing.
+        if (result.getSyncedSubIds().size() == subs.size()) {
+            SyncCheckpoint.delete(cr, SyncCheckpoint.SUBS_ID);
+        }
 
         if (ReaderPreferences.isAutoTouchAll(this.context)) {
-            for (long id: subsHandler.ids) {
+            // NOTE: failed, deferred or not due subscriptions are not synced
+            for (long id: result.getSyncedSubIds()) {
                 try {
                     this.client.touchAll(id);
                 } catch (ParseException e) {
@@ -98,8 +153,136 @@ public class ReaderManager {
             }
         }
 
-        Log.d(TAG, debugPrefix + " finished.");
-        return syncCount;
+        Log.d(TAG, debugPrefix + " finished. " + result);
+        Log.d(TAG, this.client.getTransferStats().toString());
+        Log.d(TAG, this.client.getPoolStats().toString());
+        return result;
+    }
+
+    /**
+     * returns the unread count on the server by the rpc notify, much
+     * cheaper than the sync. returns -1 if failed.
+     */
+    public int probeUnreadCount() {
+        try {
+            return this.client.countUnread();
+        } catch (IOException e) {
+            Log.w(TAG, "probe unread count failed", e);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "probe unread count failed", e);
+        } catch (IllegalStateException e) {
+            // NOTE: not logined
+        }
+        return -1;
+    }
+
+    /**
+     * returns false if the probed unread count is the same as the last
+     * synced one, and the last sync is in PROBE_MAX_SKIP_TIME.
+     */
+    public boolean isSyncNeeded(int probedUnreadCount) {
+        if (probedUnreadCount < 0) {
+            return true;
+        }
+        // NOTE: deferred subscriptions are due without modifications
+        if (countDueSubs() > 0) {
+            return true;
+        }
+        // NOTE: a new item and a read item in the interval are not probed
+        long lastSyncTime = ReaderPreferences.getLastSyncTime(this.context);
+        if (lastSyncTime + PROBE_MAX_SKIP_TIME < System.currentTimeMillis()) {
+            return true;
+        }
+        int lastCount = ReaderPreferences.getLastServerUnreadCount(this.context);
+        return (lastCount != probedUnreadCount);
+    }
+
+    /** records the probed unread count the finished sync is based on */
+    public void setSyncedUnreadCount(int probedUnreadCount) {
+        if (probedUnreadCount >= 0
+                && ReaderPreferences.isAutoTouchAll(this.context)) {
+            // NOTE: the synced items are read on the server after the probe
+            probedUnreadCount = probeUnreadCount();
+        }
+        ReaderPreferences.setLastServerUnreadCount(this.context,
+            probedUnreadCount);
+    }
+
+    private String dueSubsWhere() {
+        long now = System.currentTimeMillis() / 1000;
+        return Subscription._MODIFIED_TIME + " <> " + Subscription._ITEM_SYNC_TIME
+            + " and " + Subscription._NEXT_SYNC_TIME + " <= " + now;
+    }
+
+    private int countDueSubs() {
+        ContentResolver cr = this.context.getContentResolver();
+        Cursor cursor = cr.query(Subscription.CONTENT_URI,
+            new String[]{"count(*)"}, dueSubsWhere(), null, null);
+        try {
+            return (cursor.moveToFirst()) ? cursor.getInt(0): 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * syncs items of subscriptions in the order, subscriptions not started
+     * until the deadline are deferred to the next sync.
+     */
+    private SyncResult syncItems(List<Subscription> subs,
+            final boolean unreadOnly, int concurrency, final long deadline,
+            final SyncEvent event) {
+        SyncResult result = new SyncResult();
+        if (subs.isEmpty()) {
+            return result;
+        }
+
+        // NOTE: connections per host are limited by ApiClient
+        ExecutorService pool = Executors.newFixedThreadPool(
+            Math.min(concurrency, subs.size()));
+        List<Future<SyncResult>> futures
+            = new ArrayList<Future<SyncResult>>(subs.size());
+        try {
+            for (final Subscription sub: subs) {
+                futures.add(pool.submit(new Callable<SyncResult>() {
+                    public SyncResult call() throws IOException, ReaderException {
+                        if (System.currentTimeMillis() > deadline) {
+                            return null;
+                        }
+                        Log.d(TAG, "sync items for subscription " + sub.getUri());
+                        int syncType = (unreadOnly)
+                            ? ITEM_SYNC_UNREAD_ONLY: ITEM_SYNC_WITH_READ_IF_NO_UNREAD;
+                        return syncItems(sub, null, syncType, event);
+                    }
+                }));
+            }
+            pool.shutdown();
+
+            // NOTE: collect in subscription order, not in completion order
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    SyncResult subResult = futures.get(i).get();
+                    if (subResult == null) {
+                        result.addDeferredCount(1);
+                    } else {
+                        result.addSyncedSubId(subs.get(i).getId());
+                        result.addSyncCount(subResult.getSyncCount());
+                        result.addUpdatedCount(subResult.getUpdatedCount());
+                    }
+                } catch (ExecutionException e) {
+                    long subId = subs.get(i).getId();
+                    Log.w(TAG, "sync items failure for subscription " + subId,
+                        e.getCause());
+                    result.addError(subId, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.w(TAG, "sync items interrupted");
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        return result;
     }
 
     public int syncSubs(boolean unreadOnly) throws IOException, ReaderException {
@@ -112,11 +295,12 @@ public class ReaderManager {
             login();
         }
         if (subsHandler == null) {
-            subsHandler = new SubsHandler();
+            subsHandler = new SubsHandler(new SyncEvent());
         }
 
         final int limit = 100;
-        int syncCount = 0;
+        SyncCheckpoint checkpoint = subsHandler.checkpoint;
+        int syncCount = (checkpoint == null) ? 0: checkpoint.getOffset();
         int len = 0;
         try {
             do {
@@ -128,6 +312,12 @@ public class ReaderManager {
             throw new ReaderException("json parse error", e);
         }
 
+        if (!subsHandler.event.isEmpty()) {
+            this.context.sendBroadcast(subsHandler.event.toIntent(
+                ReaderService.ACTION_SYNC_SUBS_FINISHED));
+        }
+
+        IconFetcher.getInstance(this.context).fetchStaleIcons();
         return syncCount;
     }
 
@@ -161,6 +351,11 @@ public class ReaderManager {
 
     public int syncItems(Subscription sub, Uri subUri, int syncType)
             throws IOException, ReaderException {
+        return syncItems(sub, subUri, syncType, null).getSyncCount();
+    }
+
+    private SyncResult syncItems(Subscription sub, Uri subUri, int syncType,
+            SyncEvent event) throws IOException, ReaderException {
         if (!isLogined()) {
             login();
         }
@@ -170,42 +365,120 @@ public class ReaderManager {
             subUri = ContentUris.withAppendedId(Subscription.CONTENT_URI, subId);
         }
         int syncCount = 0;
-        ItemsHandler itemsHandler = new ItemsHandler(subId, sub.getLastItemId());
+        // NOTE: all items may be re-read if sync with read
+        long lowWaterId = (syncType == ITEM_SYNC_WITH_READ) ? 0: sub.getLastItemId();
+        ItemsHandler itemsHandler = new ItemsHandler(subId, sub.getLastItemId(),
+            sub.getItemSyncTime(), loadItemIds(subId, lowWaterId));
+        ContentResolver cr = this.context.getContentResolver();
+        // NOTE: unread items synced by the interrupted sync are not refetched
+        SyncCheckpoint checkpoint = SyncCheckpoint.load(cr, subId);
+        if (checkpoint == null || checkpoint.getModifiedTime() != subModifiedTime) {
+            checkpoint = new SyncCheckpoint(subId);
+            checkpoint.setModifiedTime(subModifiedTime);
+        }
+        if (sub.getItemSyncTime() == 0) {
+            // NOTE: replaces the server unread count of the new subscription,
+            // the items inserted from here are counted up by the triggers
+            ContentValues values = new ContentValues();
+            values.put(Subscription._UNREAD_COUNT, countUnreadItems(subId));
+            cr.update(subUri, values, null, null);
+        }
+        // NOTE: the last item id never goes back, 0 on a new checkpoint
+        itemsHandler.lastItemId = Math.max(sub.getLastItemId(),
+            checkpoint.getLastItemId());
         try {
-            try {
-                this.client.handleUnread(subId, itemsHandler);
-                syncCount = itemsHandler.counter;
-            } catch (IOException e) {
-                // NOTE: ignore. if no unread item, server http status 500
+            if (!checkpoint.isDone()) {
+                try {
+                    this.client.handleUnread(subId, itemsHandler);
+                    itemsHandler.flush();
+                    syncCount = itemsHandler.counter;
+                    checkpoint.setOffset(syncCount);
+                    checkpoint.setDone(true);
+                    checkpoint.setLastItemId(itemsHandler.lastItemId);
+                    SyncCheckpoint.save(cr, checkpoint);
+                } catch (ApiClient.HttpStatusException e) {
+                    // NOTE: ignore. if no unread item, server http status 500
+                    if (e.getStatusCode() != HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                        throw e;
+                    }
+                }
             }
+            int offset = checkpoint.getOffset();
             if (syncType == ITEM_SYNC_WITH_READ
-                    || (syncCount == 0 && syncType == ITEM_SYNC_WITH_READ_IF_NO_UNREAD)) {
+                    || (offset == 0 && syncType == ITEM_SYNC_WITH_READ_IF_NO_UNREAD)) {
                 itemsHandler.unread = false;
                 itemsHandler.continueIfExists = (syncType == ITEM_SYNC_WITH_READ);
-                this.client.handleAll(subId, syncCount, API_ALL_LIMIT, itemsHandler);
+                this.client.handleAll(subId, offset, API_ALL_LIMIT, itemsHandler);
+                itemsHandler.flush();
                 syncCount += itemsHandler.counter;
             }
 
-            String where = Item._SUBSCRIPTION_ID + " = " + subId
-                + " and " + Item._UNREAD + " = 1";
-            ContentResolver cr = this.context.getContentResolver();
-            Cursor cursor = cr.query(Item.CONTENT_URI, Item.SELECT_COUNT,
-                where, null, null);
-            cursor.moveToNext();
-            int unreadCount = cursor.getInt(0);
-            cursor.close();
-
+            long updateInterval = SyncScheduler.learnUpdateInterval(sub);
+            sub.setUpdateInterval(updateInterval);
+            long nextSyncTime = System.currentTimeMillis() / 1000
+                + SyncScheduler.nextSyncDelay(sub);
             ContentValues subValues = new ContentValues();
             subValues.put(Subscription._ITEM_SYNC_TIME, subModifiedTime);
-            subValues.put(Subscription._UNREAD_COUNT, unreadCount);
+            subValues.put(Subscription._UPDATE_INTERVAL, updateInterval);
+            subValues.put(Subscription._NEXT_SYNC_TIME, nextSyncTime);
             if (itemsHandler.lastItemId > 0) {
                 subValues.put(Subscription._LAST_ITEM_ID, itemsHandler.lastItemId);
             }
             cr.update(subUri, subValues, null, null);
+            SyncCheckpoint.delete(cr, subId);
+
+            if (event != null) {
+                // NOTE: unread count is maintained by the item triggers
+                int unreadCount = 0;
+                Cursor cursor = cr.query(subUri, Subscription.SELECT_UNREAD_COUNT,
+                    null, null, null);
+                try {
+                    if (cursor.moveToFirst()) {
+                        unreadCount = cursor.getInt(0);
+                    }
+                } finally {
+                    cursor.close();
+                }
+                event.addUpdatedSubId(subId);
+                event.addUnreadDelta(subId, unreadCount - sub.getUnreadCount());
+            }
         } catch (ParseException e) {
             throw new ReaderException("json parse error", e);
         }
-        return syncCount;
+        SyncResult result = new SyncResult();
+        result.addSyncCount(syncCount);
+        result.addUpdatedCount(itemsHandler.updated);
+        return result;
+    }
+
+    private int countUnreadItems(long subId) {
+        String where = Item._SUBSCRIPTION_ID + " = " + subId
+            + " and " + Item._UNREAD + " = 1";
+        ContentResolver cr = this.context.getContentResolver();
+        Cursor cursor = cr.query(Item.CONTENT_URI, Item.SELECT_COUNT,
+            where, null, null);
+        try {
+            return (cursor.moveToFirst()) ? cursor.getInt(0): 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private LongHashSet loadItemIds(long subId, long lowWaterId) {
+        String where = Item._SUBSCRIPTION_ID + " = " + subId
+            + " and " + Item._ID + " > " + lowWaterId;
+        ContentResolver cr = this.context.getContentResolver();
+        Cursor cursor = cr.query(Item.CONTENT_URI, Item.SELECT_ID,
+            where, null, null);
+        try {
+            LongHashSet ids = new LongHashSet(cursor.getCount());
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
     }
 
     public int syncPins() throws IOException, ReaderException {
@@ -270,6 +543,16 @@ public class ReaderManager {
         this.client.logout();
     }
 
+    /** logins with the new login id or password, not by the session */
+    public boolean loginAgain(String loginId, String password)
+            throws IOException, ReaderException {
+        return this.client.loginAgain(loginId, password);
+    }
+
+    ApiClient getApiClient() {
+        return this.client;
+    }
+
     public boolean isLogined() {
         return this.client.isLogined();
     }
@@ -278,14 +561,23 @@ public class ReaderManager {
         return this.client.getLoginId();
     }
 
+    public TransferStats getTransferStats() {
+        return this.client.getTransferStats();
+    }
+
+    public PooledConnManager.Stats getPoolStats() {
+        return this.client.getPoolStats();
+    }
+
     public int countUnread() {
         return countUnread(this.context);
     }
 
     public static int countUnread(Context context) {
         ContentResolver cr = context.getContentResolver();
-        Cursor cursor = cr.query(Item.CONTENT_URI, Item.SELECT_COUNT,
-            Item._UNREAD + " = 1", null, null);
+        // NOTE: sum of folders, not to scan subscriptions
+        Cursor cursor = cr.query(Subscription.FOLDER_CONTENT_URI,
+            Subscription.SELECT_SUM_UNREAD_COUNT, null, null, null);
         try {
             cursor.moveToNext();
             return cursor.getInt(0);
@@ -406,109 +698,226 @@ public class ReaderManager {
         }
     }
 
-    private class SubsHandler extends ContentHandlerAdapter {
+    private class SubsHandler extends JsonStreamParser.HandlerAdapter {
+
+        private static final int SUBSCRIBE_ID = 0;
+        private static final int TITLE = 1;
+        private static final int ICON = 2;
+        private static final int LINK = 3;
+        private static final int FOLDER = 4;
+        private static final int RATE = 5;
+        private static final int SUBSCRIBERS_COUNT = 6;
+        private static final int MODIFIED_ON = 7;
+        private static final int UNREAD_COUNT = 8;
 
         private ContentResolver cr;
         private ContentValues values;
-        private int unreadCount;
         private int counter;
-        private List<Long> ids = new ArrayList<Long>();
+        private final List<ContentValues> pending = new ArrayList<ContentValues>();
+        private final SyncEvent event;
+        private SyncCheckpoint checkpoint;
+
+        private SubsHandler(SyncEvent event) {
+            super(SUBS_KEYS);
+            this.event = event;
+        }
 
         public void startJSON() throws ParseException, IOException {
             this.counter = 0;
             this.cr = ReaderManager.this.context.getContentResolver();
         }
 
-        public boolean startObject() throws ParseException, IOException {
-            this.values = new ContentValues();
-            this.unreadCount = 0;
-            this.counter++;
+        public boolean startObject(int key) throws ParseException, IOException {
+            if (key == JsonStreamParser.NO_KEY) {
+                this.values = new ContentValues();
+                this.counter++;
+            }
             return true;
         }
 
         public boolean endObject() throws ParseException, IOException {
             if (this.values != null) {
-                long id = this.values.getAsLong(Subscription._ID);
-                Uri uri = ContentUris.withAppendedId(Subscription.CONTENT_URI, id);
-                if (this.cr.update(uri, this.values, null, null) == 0) {
-                    try {
-                        bindIcon();
-                    } catch (IOException e) {
-                        // ignore error for icon
-                    }
-                    this.values.put(Subscription._UNREAD_COUNT, this.unreadCount);
-                    this.cr.insert(Subscription.CONTENT_URI, this.values);
-                    ReaderManager.this.context.sendBroadcast(
-                        new Intent(ReaderService.ACTION_SYNC_SUBS_FINISHED));
-                }
-                this.ids.add(id);
+                this.pending.add(this.values);
                 this.values = null;
             }
             return true;
         }
 
-        public boolean primitive(Object value) throws ParseException, IOException {
-            if (this.key == null || this.values == null) {
-                return true;
-            } else if (this.key.equals("subscribe_id")) {
-                this.values.put(Subscription._ID, asLong(value));
-            } else if (this.key.equals("title")) {
-                this.values.put(Subscription._TITLE, asString(value));
-            } else if (this.key.equals("icon")) {
-                String iconUri = asString(value);
-                this.values.put(Subscription._ICON_URI, iconUri);
-            } else if (this.key.equals("link")) {
-                this.values.put(Subscription._URI, asString(value));
-            } else if (this.key.equals("folder")) {
-                this.values.put(Subscription._FOLDER, asString(value));
-            } else if (this.key.equals("rate")) {
-                this.values.put(Subscription._RATE, asInt(value));
-            } else if (this.key.equals("unread_count")) {
-                this.unreadCount = asInt(value);
-            } else if (this.key.equals("subscribers_count")) {
-                this.values.put(Subscription._SUBSCRIBERS_COUNT, asInt(value));
-            } else if (this.key.equals("modified_on")) {
-                this.values.put(Subscription._MODIFIED_TIME, asLong(value));
+        public void endJSON() throws ParseException, IOException {
+            // NOTE: store a page in a transaction, changes are notified once
+            Map<Long, String[]> stored = loadStored();
+            this.cr.query(ReaderProvider.URI_TXN_BEGIN, null, null, null, null);
+            try {
+                for (ContentValues values: this.pending) {
+                    store(values, stored.get(values.getAsLong(Subscription._ID)));
+                }
+                if (this.checkpoint != null) {
+                    this.checkpoint.setOffset(
+                        this.checkpoint.getOffset() + this.counter);
+                    SyncCheckpoint.save(this.cr, this.checkpoint);
+                }
+                this.cr.query(ReaderProvider.URI_TXN_SUCCESS, null, null, null, null);
+            } finally {
+                this.cr.query(ReaderProvider.URI_TXN_END, null, null, null, null);
+                this.pending.clear();
             }
-            return true;
         }
 
-        private void bindIcon() throws IOException {
-            String iconUri = this.values.getAsString(Subscription._ICON_URI);
-            if (TextUtils.isEmpty(iconUri)) {
-                return;
+        /** the listed columns of stored subscriptions in the page, by id */
+        private Map<Long, String[]> loadStored() {
+            Map<Long, String[]> stored = new HashMap<Long, String[]>();
+            if (this.pending.isEmpty()) {
+                return stored;
             }
-            Bitmap icon = null;
-            InputStream in = ReaderManager.this.client.doGetInputStream(iconUri);
+            StringBuilder where = new StringBuilder(this.pending.size() * 8);
+            where.append(Subscription._ID).append(" in (");
+            for (int i = 0; i < this.pending.size(); i++) {
+                if (i > 0) {
+                    where.append(",");
+                }
+                where.append(this.pending.get(i).getAsLong(Subscription._ID));
+            }
+            where.append(")");
+            Cursor cursor = this.cr.query(Subscription.CONTENT_URI,
+                SUBS_LISTED_COLUMNS, new String(where), null, null);
             try {
-                icon = BitmapFactory.decodeStream(in);
+                while (cursor.moveToNext()) {
+                    String[] columns = new String[SUBS_LISTED_COLUMNS.length];
+                    for (int i = 0; i < columns.length; i++) {
+                        columns[i] = cursor.getString(i);
+                    }
+                    stored.put(cursor.getLong(0), columns);
+                }
             } finally {
-                in.close();
+                cursor.close();
             }
-            int size = icon.getWidth() * icon.getHeight() * 2;
-            ByteArrayOutputStream out = new ByteArrayOutputStream(size);
-            icon.compress(Bitmap.CompressFormat.PNG, 100, out);
-            out.flush();
-            out.close();
-            this.values.put(Subscription._ICON, out.toByteArray());
+            return stored;
+        }
+
+        private void store(ContentValues values, String[] stored) {
+            long id = values.getAsLong(Subscription._ID);
+            Uri uri = ContentUris.withAppendedId(Subscription.CONTENT_URI, id);
+            // NOTE: enables subscriptions disabled by older versions
+            values.put(Subscription._DISABLED, 0);
+            // NOTE: the server unread count is shown until the first item
+            // sync, after that counted by the item triggers
+            Integer unreadCount = values.getAsInteger(Subscription._UNREAD_COUNT);
+            values.remove(Subscription._UNREAD_COUNT);
+            if (stored == null) {
+                values.put(Subscription._UNREAD_COUNT,
+                    (unreadCount == null) ? 0: unreadCount);
+                this.cr.insert(Subscription.CONTENT_URI, values);
+                // NOTE: broadcasted once after all pages
+                this.event.addNewSubId(id);
+                return;
+            }
+            // NOTE: unchanged subscriptions are not written nor reported
+            boolean changed = false;
+            boolean iconChanged = false;
+            for (int i = 1; i < SUBS_LISTED_COLUMNS.length; i++) {
+                String value = values.getAsString(SUBS_LISTED_COLUMNS[i]);
+                if (value == null ? stored[i] != null: !value.equals(stored[i])) {
+                    changed = true;
+                    if (Subscription._ICON_URI.equals(SUBS_LISTED_COLUMNS[i])) {
+                        iconChanged = true;
+                    }
+                }
+            }
+            if (!changed) {
+                return;
+            }
+            if (iconChanged) {
+                // NOTE: the icon is refetched by IconFetcher
+                updateIconUri(uri, values);
+            } else {
+                this.cr.update(uri, values, null, null);
+            }
+            this.event.addUpdatedSubId(id);
+        }
+
+        public boolean primitive(int key, JsonStreamParser.Value value)
+                throws ParseException, IOException {
+            if (this.values == null) {
+                return true;
+            }
+            switch (key) {
+            case SUBSCRIBE_ID:
+                this.values.put(Subscription._ID, value.asLong());
+                break;
+            case TITLE:
+                this.values.put(Subscription._TITLE, value.asString());
+                break;
+            case ICON:
+                this.values.put(Subscription._ICON_URI, value.asString());
+                break;
+            case LINK:
+                this.values.put(Subscription._URI, value.asString());
+                break;
+            case FOLDER:
+                this.values.put(Subscription._FOLDER, value.asString());
+                break;
+            case RATE:
+                this.values.put(Subscription._RATE, value.asInt());
+                break;
+            case SUBSCRIBERS_COUNT:
+                this.values.put(Subscription._SUBSCRIBERS_COUNT, value.asInt());
+                break;
+            case MODIFIED_ON:
+                this.values.put(Subscription._MODIFIED_TIME, value.asLong());
+                break;
+            case UNREAD_COUNT:
+                this.values.put(Subscription._UNREAD_COUNT, value.asInt());
+                break;
+            }
+            return true;
+        }
+
+        private void updateIconUri(Uri uri, ContentValues values) {
+            values.put(Subscription._ICON_CHECKED_TIME, 0);
+            values.putNull(Subscription._ICON_ETAG);
+            values.putNull(Subscription._ICON_LAST_MODIFIED);
+            this.cr.update(uri, values, null, null);
         }
     }
 
-    private class ItemsHandler extends ContentHandlerAdapter {
+    private class ItemsHandler extends JsonStreamParser.HandlerAdapter {
+
+        private static final int ITEMS = 0;
+        private static final int ID = 1;
+        private static final int TITLE = 2;
+        private static final int BODY = 3;
+        private static final int AUTHOR = 4;
+        private static final int LINK = 5;
+        private static final int CREATED_ON = 6;
+        private static final int MODIFIED_ON = 7;
 
         private final long subId;
         private final long subLastItemId;
+        private final long subItemSyncTime;
+        private final LongHashSet knownIds;
+        private final List<ContentValues> batch
+            = new ArrayList<ContentValues>(ITEM_BATCH_SIZE);
+        private final List<ContentValues> upsertBatch
+            = new ArrayList<ContentValues>();
+        private int batchChars;
         private ContentResolver cr;
         private ContentValues values;
         private boolean startItems;
         private int counter;
+        private int updated;
         private boolean unread = true;
         private boolean continueIfExists;
         private long lastItemId;
+        // NOTE: the last inserted item id of the batch, stored after flush
+        private long batchLastItemId;
 
-        private ItemsHandler(long subId, long lastItemId) {
+        private ItemsHandler(long subId, long lastItemId, long itemSyncTime,
+                LongHashSet knownIds) {
+            super(ITEMS_KEYS);
             this.subId = subId;
             this.subLastItemId = lastItemId;
+            this.subItemSyncTime = itemSyncTime;
+            this.knownIds = knownIds;
         }
 
         public void startJSON() throws ParseException, IOException {
@@ -516,8 +925,8 @@ public class ReaderManager {
             this.cr = ReaderManager.this.context.getContentResolver();
         }
 
-        public boolean startObject() throws ParseException, IOException {
-            if (this.startItems) {
+        public boolean startObject(int key) throws ParseException, IOException {
+            if (this.startItems && key == JsonStreamParser.NO_KEY) {
                 this.values = new ContentValues();
                 this.values.put(Item._SUBSCRIPTION_ID, this.subId);
                 this.counter++;
@@ -526,30 +935,61 @@ public class ReaderManager {
         }
 
         public boolean endObject() throws ParseException, IOException {
-            if (this.startItems) {
+            if (this.startItems && this.values != null) {
                 long id = this.values.getAsLong(Item._ID);
-                if (!continueIfExists && id <= this.subLastItemId) {
+                // NOTE: items modified after the last sync are updated
+                Long modifiedTime = this.values.getAsLong(Item._MODIFIED_TIME);
+                boolean modified = (modifiedTime != null
+                    && modifiedTime > this.subItemSyncTime);
+                boolean old = (!continueIfExists && id <= this.subLastItemId);
+                if (old && !modified) {
                     return continueIfExists;
                 }
-                Uri uri = ContentUris.withAppendedId(Item.CONTENT_URI, id);
-                Cursor cursor = this.cr.query(uri, null, null, null, null);
-                boolean exists = (cursor.getCount() > 0);
-                cursor.close();
-                if (exists) {
+                // NOTE: provider ignores an item inserted by others meanwhile
+                boolean exists = (!this.knownIds.add(id) || old);
+                if (exists && !modified) {
                     return continueIfExists;
                 }
 
                 this.values.put(Item._UNREAD, (this.unread ? 1: 0));
-                this.cr.insert(Item.CONTENT_URI, this.values);
+                String body = this.values.getAsString(Item._BODY);
+                if (body != null) {
+                    this.batchChars += body.length();
+                }
+                if (exists) {
+                    this.upsertBatch.add(this.values);
+                } else {
+                    this.batch.add(this.values);
+                    this.batchLastItemId = Math.max(this.batchLastItemId, id);
+                }
                 this.values = null;
-
-                this.lastItemId = Math.max(this.lastItemId, id);
+                if (this.batch.size() + this.upsertBatch.size() >= ITEM_BATCH_SIZE
+                        || this.batchChars >= ITEM_BATCH_CHARS) {
+                    flush();
+                }
             }
             return true;
         }
 
-        public boolean startArray() throws ParseException, IOException {
-            if (!this.startItems && this.key.equals("items")) {
+        private void flush() {
+            if (!this.batch.isEmpty()) {
+                this.cr.bulkInsert(Item.CONTENT_URI,
+                    this.batch.toArray(new ContentValues[this.batch.size()]));
+                this.batch.clear();
+            }
+            if (!this.upsertBatch.isEmpty()) {
+                // NOTE: updated only if newer, unread of the local is kept
+                this.updated += this.cr.bulkInsert(Item.UPSERT_URI,
+                    this.upsertBatch.toArray(
+                        new ContentValues[this.upsertBatch.size()]));
+                this.upsertBatch.clear();
+            }
+            this.batchChars = 0;
+            this.lastItemId = Math.max(this.lastItemId, this.batchLastItemId);
+        }
+
+        public boolean startArray(int key) throws ParseException, IOException {
+            if (!this.startItems && key == ITEMS) {
                 this.startItems = true;
             }
             return true;
@@ -562,44 +1002,66 @@ public class ReaderManager {
             return true;
         }
 
-        public boolean primitive(Object value)
+        public boolean primitive(int key, JsonStreamParser.Value value)
                 throws ParseException, IOException {
-            if (this.key == null || this.values == null) {
+            if (this.values == null) {
                 return true;
-            } else if (this.key.equals("id")) {
-                this.values.put(Item._ID, asLong(value));
-            } else if (this.key.equals("title")) {
-                this.values.put(Item._TITLE, asString(value));
-            } else if (this.key.equals("body")) {
-                this.values.put(Item._BODY, asString(value));
-            } else if (this.key.equals("author")) {
-                this.values.put(Item._AUTHOR, asString(value));
-            } else if (this.key.equals("link")) {
-                this.values.put(Item._URI, asString(value));
-            } else if (this.key.equals("created_on")) {
-                this.values.put(Item._CREATED_TIME, asLong(value));
-            } else if (this.key.equals("modified_on")) {
-                this.values.put(Item._MODIFIED_TIME, asLong(value));
+            }
+            switch (key) {
+            case ID:
+                this.values.put(Item._ID, value.asLong());
+                break;
+            case TITLE:
+                this.values.put(Item._TITLE, value.asString());
+                break;
+            case BODY:
+                String body = value.asString();
+                this.values.put(Item._BODY, body);
+                // NOTE: lists show the summary, no regex on binding rows
+                this.values.put(Item._SUMMARY, Item.createSummary(body));
+                break;
+            case AUTHOR:
+                this.values.put(Item._AUTHOR, value.asString());
+                break;
+            case LINK:
+                this.values.put(Item._URI, value.asString());
+                break;
+            case CREATED_ON:
+                this.values.put(Item._CREATED_TIME, value.asLong());
+                break;
+            case MODIFIED_ON:
+                this.values.put(Item._MODIFIED_TIME, value.asLong());
+                break;
             }
             return true;
         }
     }
 
-    private class PinsHandler extends ContentHandlerAdapter {
+    private class PinsHandler extends JsonStreamParser.HandlerAdapter {
+
+        private static final int LINK = 0;
+        private static final int TITLE = 1;
+        private static final int CREATED_ON = 2;
 
         private ContentResolver cr;
         private ContentValues values;
         private int counter;
 
+        private PinsHandler() {
+            super(PINS_KEYS);
+        }
+
         public void startJSON() throws ParseException, IOException {
             this.counter = 0;
             this.cr = ReaderManager.this.context.getContentResolver();
             cr.delete(Pin.CONTENT_URI, null, null);
         }
 
-        public boolean startObject() throws ParseException, IOException {
-            this.values = new ContentValues();
-            this.counter++;
+        public boolean startObject(int key) throws ParseException, IOException {
+            if (key == JsonStreamParser.NO_KEY) {
+                this.values = new ContentValues();
+                this.counter++;
+            }
             return true;
         }
 
@@ -612,61 +1074,22 @@ public class ReaderManager {
             return true;
         }
 
-        public boolean primitive(Object value)
+        public boolean primitive(int key, JsonStreamParser.Value value)
                 throws ParseException, IOException {
-            if (this.key == null || this.values == null) {
+            if (this.values == null) {
                 return true;
-            } else if (this.key.equals("link")) {
-                this.values.put(Pin._URI, asString(value));
-            } else if (this.key.equals("title")) {
-                this.values.put(Pin._TITLE, asString(value));
-            } else if (this.key.equals("created_on")) {
-                this.values.put(Pin._CREATED_TIME, asLong(value));
             }
-            return true;
-        }
-    }
-
-    private static abstract class ContentHandlerAdapter
-            implements ContentHandler {
-
-        protected String key;
-
-        public void startJSON() throws ParseException, IOException {
-        }
-
-        public void endJSON() throws ParseException, IOException {
-        }
-
-        public boolean startObject() throws ParseException, IOException {
-            return true;
-        }
-
-        public boolean endObject() throws ParseException, IOException {
-            return true;
-        }
-
-        public boolean startObjectEntry(String key)
-                throws ParseException, IOException {
-            this.key = key;
-            return true;
-        }
-
-        public boolean endObjectEntry() throws ParseException, IOException {
-            this.key = null;
-            return true;
-        }
-
-        public boolean startArray() throws ParseException, IOException {
-            return true;
-        }
-
-        public boolean endArray() throws ParseException, IOException {
-            return true;
-        }
-
-        public boolean primitive(Object value)
-                throws ParseException, IOException {
+            switch (key) {
+            case LINK:
+                this.values.put(Pin._URI, value.asString());
+                break;
+            case TITLE:
+                this.values.put(Pin._TITLE, value.asString());
+                break;
+            case CREATED_ON:
+                this.values.put(Pin._CREATED_TIME, value.asLong());
+                break;
+            }
             return true;
         }
     }
@@ -11,6 +11,8 @@ public class ReaderPreferences {
     public static final String KEY_SUBS_VIEW = "subs_view";
     public static final String KEY_SUBS_SORT = "subs_sort";
     public static final String KEY_SYNC_INTERVAL_HOURS = "sync_interval_hours";
+    public static final String KEY_SYNC_CONCURRENCY = "sync_concurrency";
+    public static final String KEY_MAX_REQUESTS_PER_HOST = "max_requests_per_host";
     public static final String KEY_SYNC_UNREAD_ONLY = "sync_unread_only";
     public static final String KEY_SYNC_NOTIFIABLE = "sync_notifiable";
     public static final String KEY_AUTO_TOUCH_ALL = "auto_touch_all";
@@ -20,6 +22,7 @@ public class ReaderPreferences {
     public static final String KEY_ITEM_BODY_FONT_SIZE = "item_body_font_size";
     public static final String KEY_OMIT_ITEM_LIST = "omit_item_list";
     public static final String KEY_LAST_SYNC_TIME = "last_sync_time";
+    public static final String KEY_LAST_SERVER_UNREAD_COUNT = "last_server_unread_count";
 
     public static final int SUBS_VIEW_FLAT = 1;
     public static final int SUBS_VIEW_FOLDER = 2;
@@ -59,6 +62,13 @@ public class ReaderPreferences {
         return getPreferences(c).getBoolean(name, def);
     }
 
+    public static void putInt(Context c, String name, int value) {
+        SharedPreferences sp = getPreferences(c);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putInt(name, value);
+        editor.commit();
+    }
+
     public static void putLong(Context c, String name, long value) {
         SharedPreferences sp = getPreferences(c);
         SharedPreferences.Editor editor = sp.edit();
@@ -114,6 +124,23 @@ public class ReaderPreferences {
         return (hour * 60 * 60 * 1000);
     }
 
+    public static int getSyncConcurrency(Context c) {
+        String n = getString(c, KEY_SYNC_CONCURRENCY);
+        if (n != null && n.length() != 0) {
+            return Math.max(Integer.parseInt(n), 1);
+        }
+        return 2;
+    }
+
+    /** connections to the reader host, apart from the sync concurrency */
+    public static int getMaxRequestsPerHost(Context c) {
+        String n = getString(c, KEY_MAX_REQUESTS_PER_HOST);
+        if (n != null && n.length() != 0) {
+            return Math.max(Integer.parseInt(n), 1);
+        }
+        return ApiClient.MAX_REQUESTS_PER_HOST;
+    }
+
     public static boolean isSyncUnreadOnly(Context c) {
         return getBoolean(c, KEY_SYNC_UNREAD_ONLY, true);
     }
@@ -158,4 +185,12 @@ public class ReaderPreferences {
     public static void setLastSyncTime(Context c, long value) {
         putLong(c, KEY_LAST_SYNC_TIME, value);
     }
+
+    public static int getLastServerUnreadCount(Context c) {
+        return getInt(c, KEY_LAST_SERVER_UNREAD_COUNT, -1);
+    }
+
+    public static void setLastServerUnreadCount(Context c, int value) {
+        putInt(c, KEY_LAST_SERVER_UNREAD_COUNT, value);
+    }
 }
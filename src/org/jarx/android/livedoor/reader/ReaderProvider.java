@@ -1,6 +1,9 @@
 package org.jarx.android.livedoor.reader;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import android.content.ContentProvider;
 import android.content.ContentUris;
 import android.content.ContentValues;
@@ -12,6 +15,7 @@ import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.provider.BaseColumns;
 import android.text.TextUtils;
@@ -33,10 +37,22 @@ public class ReaderProvider extends ContentProvider {
         = SUB_CONTENT_URI_NAME + "/folder";
     public static final String SUB_RATE_CONTENT_URI_NAME
         = SUB_CONTENT_URI_NAME + "/rate";
+    public static final String SUB_FOLDER_TREE_URI_NAME
+        = SUB_FOLDER_CONTENT_URI_NAME + "/tree";
+    public static final String SUB_RATE_TREE_URI_NAME
+        = SUB_RATE_CONTENT_URI_NAME + "/tree";
     public static final String ITEM_CONTENT_URI_NAME
         = "content://" + AUTHORITY + "/" + Item.TABLE_NAME;
+    public static final String ITEM_UPSERT_URI_NAME
+        = ITEM_CONTENT_URI_NAME + "/upsert";
+    public static final String ITEM_SEARCH_URI_NAME
+        = ITEM_CONTENT_URI_NAME + "/search";
     public static final String PIN_CONTENT_URI_NAME
         = "content://" + AUTHORITY + "/" + Pin.TABLE_NAME;
+    public static final String CHECKPOINT_CONTENT_URI_NAME
+        = "content://" + AUTHORITY + "/" + SyncCheckpoint.TABLE_NAME;
+    public static final String ICON_CONTENT_URI_NAME
+        = "content://" + AUTHORITY + "/" + Icon.TABLE_NAME;
 
     public static final Uri URI_TXN_BEGIN = Uri.parse(BEGIN_TXN_URI_NAME);
     public static final Uri URI_TXN_SUCCESS = Uri.parse(SUCCESS_TXN_URI_NAME);
@@ -44,7 +60,14 @@ public class ReaderProvider extends ContentProvider {
 
     private static final String TAG = "ReaderProvider";
     private static final String DATABASE_NAME = "reader.db";
-    private static final int DATABASE_VERSION = 7;
+    private static final int DATABASE_VERSION = 16;
+
+    private static final int SEARCH_LIMIT = 500;
+    private static final String SQL_FTS_DELETE = "delete from "
+        + Item.FTS_TABLE_NAME + " where docid = ?";
+    private static final String SQL_FTS_INSERT = "insert into "
+        + Item.FTS_TABLE_NAME + " (docid, " + Item._TITLE + ", "
+        + Item._BODY + ", " + Item._AUTHOR + ") values (?, ?, ?, ?)";
 
     private static final String CONTENT_TYPE_ITEM
         = "vnd.android.cursor.item/vnd." + AUTHORITY;
@@ -59,10 +82,17 @@ public class ReaderProvider extends ContentProvider {
     private static final int UM_SUBS = 11;
     private static final int UM_SUBS_FOLDER = 12;
     private static final int UM_SUBS_RATE = 13;
+    private static final int UM_SUBS_FOLDER_TREE = 14;
+    private static final int UM_SUBS_RATE_TREE = 15;
     private static final int UM_ITEM_ID = 20;
     private static final int UM_ITEMS = 21;
+    private static final int UM_ITEMS_UPSERT = 22;
+    private static final int UM_ITEMS_SEARCH = 23;
     private static final int UM_PIN_ID = 30;
     private static final int UM_PINS = 31;
+    private static final int UM_CHECKPOINT_ID = 40;
+    private static final int UM_CHECKPOINTS = 41;
+    private static final int UM_ICONS = 51;
 
     static {
         uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
@@ -77,14 +107,28 @@ public class ReaderProvider extends ContentProvider {
             Subscription.TABLE_NAME + "/folder", UM_SUBS_FOLDER);
         uriMatcher.addURI(AUTHORITY,
             Subscription.TABLE_NAME + "/rate", UM_SUBS_RATE);
+        uriMatcher.addURI(AUTHORITY,
+            Subscription.TABLE_NAME + "/folder/tree", UM_SUBS_FOLDER_TREE);
+        uriMatcher.addURI(AUTHORITY,
+            Subscription.TABLE_NAME + "/rate/tree", UM_SUBS_RATE_TREE);
         uriMatcher.addURI(AUTHORITY,
             Item.TABLE_NAME + "/#", UM_ITEM_ID);
         uriMatcher.addURI(AUTHORITY,
             Item.TABLE_NAME, UM_ITEMS);
+        uriMatcher.addURI(AUTHORITY,
+            Item.TABLE_NAME + "/upsert", UM_ITEMS_UPSERT);
+        uriMatcher.addURI(AUTHORITY,
+            Item.TABLE_NAME + "/search", UM_ITEMS_SEARCH);
         uriMatcher.addURI(AUTHORITY,
             Pin.TABLE_NAME + "/#", UM_PIN_ID);
         uriMatcher.addURI(AUTHORITY,
             Pin.TABLE_NAME, UM_PINS);
+        uriMatcher.addURI(AUTHORITY,
+            SyncCheckpoint.TABLE_NAME + "/#", UM_CHECKPOINT_ID);
+        uriMatcher.addURI(AUTHORITY,
+            SyncCheckpoint.TABLE_NAME, UM_CHECKPOINTS);
+        uriMatcher.addURI(AUTHORITY,
+            Icon.TABLE_NAME, UM_ICONS);
     }
 
     static String sqlCreateIndex(String tableName, String columnName) {
@@ -142,6 +186,9 @@ public class ReaderProvider extends ContentProvider {
             db.execSQL(Subscription.SQL_CREATE_TABLE);
             db.execSQL(Item.SQL_CREATE_TABLE);
             db.execSQL(Pin.SQL_CREATE_TABLE);
+            db.execSQL(SyncCheckpoint.SQL_CREATE_TABLE);
+            db.execSQL(Icon.SQL_CREATE_TABLE);
+            db.execSQL(SubscriptionGroup.SQL_CREATE_TABLE);
             for (String column: Subscription.INDEX_COLUMNS) {
                 db.execSQL(sqlCreateIndex(Subscription.TABLE_NAME, column));
             }
@@ -151,6 +198,15 @@ public class ReaderProvider extends ContentProvider {
             for (String column: Pin.INDEX_COLUMNS) {
                 db.execSQL(sqlCreateIndex(Pin.TABLE_NAME, column));
             }
+            for (String sql: Item.SQL_CREATE_TRIGGERS) {
+                db.execSQL(sql);
+            }
+            for (String sql: Item.SQL_CREATE_FTS) {
+                db.execSQL(sql);
+            }
+            for (String sql: SubscriptionGroup.SQL_CREATE_TRIGGERS) {
+                db.execSQL(sql);
+            }
         }
 
         @Override
@@ -161,13 +217,30 @@ public class ReaderProvider extends ContentProvider {
             for (String sql: Item.sqlForUpgrade(oldVersion, newVersion)) {
                 db.execSQL(sql);
             }
+            if (oldVersion < 12) {
+                Item.updateSummaries(db);
+            }
+            if (oldVersion < 13) {
+                Item.updateFullTextIndex(db);
+            }
             for (String sql: Pin.sqlForUpgrade(oldVersion, newVersion)) {
                 db.execSQL(sql);
             }
+            for (String sql: SyncCheckpoint.sqlForUpgrade(oldVersion, newVersion)) {
+                db.execSQL(sql);
+            }
+            for (String sql: Icon.sqlForUpgrade(oldVersion, newVersion)) {
+                db.execSQL(sql);
+            }
+            for (String sql: SubscriptionGroup.sqlForUpgrade(oldVersion, newVersion)) {
+                db.execSQL(sql);
+            }
         }
     }
 
     private ReaderOpenHelper openHelper;
+    private final ThreadLocal<NotifyBatch> notifyBatch
+        = new ThreadLocal<NotifyBatch>();
 
     @Override
     public boolean onCreate() {
@@ -181,12 +254,19 @@ public class ReaderProvider extends ContentProvider {
         case UM_SUB_ID:
         case UM_ITEM_ID:
         case UM_PIN_ID:
+        case UM_CHECKPOINT_ID:
             return CONTENT_TYPE_ITEM;
         case UM_SUBS:
         case UM_SUBS_FOLDER:
         case UM_SUBS_RATE:
+        case UM_SUBS_FOLDER_TREE:
+        case UM_SUBS_RATE_TREE:
         case UM_ITEMS:
+        case UM_ITEMS_UPSERT:
+        case UM_ITEMS_SEARCH:
         case UM_PINS:
+        case UM_CHECKPOINTS:
+        case UM_ICONS:
             return CONTENT_TYPE_DIR;
         default:
             throw new IllegalArgumentException("Unknown URI " + uri);
@@ -211,13 +291,13 @@ public class ReaderProvider extends ContentProvider {
         }
         switch (uriMatcher.match(uri)) {
         case UM_BEGIN_TXN:
-            db.beginTransaction();
+            beginTransaction(db);
             return null;
         case UM_SUCCESS_TXN:
-            db.setTransactionSuccessful();
+            setTransactionSuccessful(db);
             return null;
         case UM_END_TXN:
-            db.endTransaction();
+            endTransaction(db);
             return null;
         case UM_SUB_ID:
             if (projection == null) {
@@ -234,30 +314,33 @@ public class ReaderProvider extends ContentProvider {
             qb.setTables(Subscription.TABLE_NAME);
             break;
         case UM_SUBS_FOLDER:
-            qb.setTables(Subscription.TABLE_NAME);
+            // NOTE: groups of enabled subscriptions, counted on write
             if (projection == null) {
-                projection = new String[]{
-                    "max(" + Subscription._ID + ") " + Subscription._ID,
-                    Integer.toString(Subscription.GROUP_FOLDER),
-                    "count(" + Subscription._ID + ")",
-                    Subscription._FOLDER,
-                    "sum(" + Subscription._UNREAD_COUNT + ")"
-                };
-            }
-            groupBy = Subscription._FOLDER;
+                projection = SubscriptionGroup.DEFAULT_SELECT;
+            }
+            qb.setTables(SubscriptionGroup.TABLE_NAME);
+            qb.appendWhere(SubscriptionGroup._GROUP + " = "
+                + Subscription.GROUP_FOLDER);
             break;
         case UM_SUBS_RATE:
-            qb.setTables(Subscription.TABLE_NAME);
             if (projection == null) {
-                projection = new String[]{
-                    "max(" + Subscription._ID + ") " + Subscription._ID,
-                    Integer.toString(Subscription.GROUP_RATE),
-                    "count(" + Subscription._ID + ")",
-                    Subscription._RATE,
-                    "sum(" + Subscription._UNREAD_COUNT + ")"
-                };
-            }
-            groupBy = Subscription._RATE;
+                projection = SubscriptionGroup.DEFAULT_SELECT;
+            }
+            qb.setTables(SubscriptionGroup.TABLE_NAME);
+            qb.appendWhere(SubscriptionGroup._GROUP + " = "
+                + Subscription.GROUP_RATE);
+            break;
+        case UM_SUBS_FOLDER_TREE:
+        case UM_SUBS_RATE_TREE:
+            // NOTE: subscriptions of a group are contiguous, in the sort order
+            if (projection == null) {
+                projection = Subscription.DEFAULT_SELECT;
+            }
+            qb.setTables(Subscription.TABLE_NAME);
+            String groupOrder = (uriMatcher.match(uri) == UM_SUBS_FOLDER_TREE)
+                ? Subscription._FOLDER + " asc": Subscription._RATE + " desc";
+            sortOrder = (sortOrder == null) ? groupOrder
+                : groupOrder + ", " + sortOrder;
             break;
         case UM_ITEM_ID:
             qb.setTables(Item.TABLE_NAME);
@@ -266,9 +349,12 @@ public class ReaderProvider extends ContentProvider {
             break;
         case UM_ITEMS:
             qb.setTables(Item.TABLE_NAME);
-            // PENDING:
-            //limit = "200";
+            selection = pageSelection(uri, selection);
+            limit = pageLimit(uri, limit);
             break;
+        case UM_ITEMS_SEARCH:
+            return searchItems(db, uri, projection, pageSelection(uri, selection),
+                selectionArgs, sortOrder, pageLimit(uri, limit));
         case UM_PIN_ID:
             qb.setTables(Pin.TABLE_NAME);
             qb.appendWhere(Pin._ID + " = "
@@ -277,6 +363,17 @@ public class ReaderProvider extends ContentProvider {
         case UM_PINS:
             qb.setTables(Pin.TABLE_NAME);
             break;
+        case UM_CHECKPOINT_ID:
+            qb.setTables(SyncCheckpoint.TABLE_NAME);
+            qb.appendWhere(SyncCheckpoint._ID + " = "
+                + uri.getPathSegments().get(1));
+            break;
+        case UM_CHECKPOINTS:
+            qb.setTables(SyncCheckpoint.TABLE_NAME);
+            break;
+        case UM_ICONS:
+            qb.setTables(Icon.TABLE_NAME);
+            break;
         default:
             throw new IllegalArgumentException("Unknown URI " + uri);
         }
@@ -287,36 +384,347 @@ public class ReaderProvider extends ContentProvider {
         return c;
     }
 
+    /**
+     * appends the keyset of item uris to the selection, after_id and
+     * before_id are exclusive, for items in _id desc.
+     */
+    private static String pageSelection(Uri uri, String selection) {
+        String afterId = uri.getQueryParameter(Item.PAGE_AFTER_ID_PARAM);
+        String beforeId = uri.getQueryParameter(Item.PAGE_BEFORE_ID_PARAM);
+        if (afterId == null && beforeId == null) {
+            return selection;
+        }
+        StringBuilder buff = new StringBuilder(128);
+        if (!TextUtils.isEmpty(selection)) {
+            buff.append("(").append(selection).append(")");
+        }
+        // NOTE: parsed, not to inject sql
+        if (afterId != null) {
+            if (buff.length() > 0) {
+                buff.append(" and ");
+            }
+            buff.append(Item.TABLE_NAME).append(".").append(Item._ID);
+            buff.append(" > ").append(Long.parseLong(afterId));
+        }
+        if (beforeId != null) {
+            if (buff.length() > 0) {
+                buff.append(" and ");
+            }
+            buff.append(Item.TABLE_NAME).append(".").append(Item._ID);
+            buff.append(" < ").append(Long.parseLong(beforeId));
+        }
+        return new String(buff);
+    }
+
+    private static String pageLimit(Uri uri, String limit) {
+        String pageLimit = uri.getQueryParameter(Item.PAGE_LIMIT_PARAM);
+        if (pageLimit == null) {
+            return limit;
+        }
+        return Integer.toString(Integer.parseInt(pageLimit));
+    }
+
+    /**
+     * searches items by the full text index, newer first if no sort order.
+     * columns are of Item.SELECT_HEADER if no projection, the summary is
+     * the snippet, computed only if projected.
+     */
+    private Cursor searchItems(SQLiteDatabase db, Uri uri, String[] projection,
+            String selection, String[] selectionArgs, String sortOrder,
+            String limit) {
+        String matchQuery = uri.getQueryParameter(Item.SEARCH_QUERY_PARAM);
+        if (TextUtils.isEmpty(matchQuery)) {
+            throw new IllegalArgumentException("No search query " + uri);
+        }
+        int argsLength = (selectionArgs == null) ? 0: selectionArgs.length;
+        String[] args = new String[argsLength + 1];
+        args[0] = matchQuery;
+        if (argsLength > 0) {
+            System.arraycopy(selectionArgs, 0, args, 1, argsLength);
+        }
+        if (sortOrder == null) {
+            sortOrder = Item.TABLE_NAME + "." + Item._ID + " desc";
+        }
+        if (projection == null) {
+            projection = Item.SELECT_HEADER;
+        }
+        StringBuilder buff = sqlSearchItems(projection, selection);
+        buff.append(" order by ").append(sortOrder);
+        // NOTE: keyset pages are bounded by the ids, the range is all listed
+        boolean paged = (uri.getQueryParameter(Item.PAGE_AFTER_ID_PARAM) != null
+            || uri.getQueryParameter(Item.PAGE_BEFORE_ID_PARAM) != null);
+        if (limit == null && !paged) {
+            limit = Integer.toString(SEARCH_LIMIT);
+        }
+        if (limit != null) {
+            buff.append(" limit ").append(limit);
+        }
+        Cursor c = db.rawQuery(new String(buff), args);
+        c.setNotificationUri(getContext().getContentResolver(), Item.CONTENT_URI);
+        return c;
+    }
+
+    /** select of columns from items joined to the full text index */
+    private static StringBuilder sqlSearchItems(String[] columns,
+            String selection) {
+        StringBuilder buff = new StringBuilder(512);
+        buff.append("select ");
+        for (int i = 0; i < columns.length; i++) {
+            String column = columns[i];
+            if (i > 0) {
+                buff.append(", ");
+            }
+            if (Item._SUMMARY.equals(column)) {
+                buff.append("snippet(").append(Item.FTS_TABLE_NAME);
+                buff.append(", '', '', '...') ").append(Item._SUMMARY);
+            } else {
+                buff.append(Item.TABLE_NAME).append(".").append(column);
+            }
+        }
+        buff.append(" from ").append(Item.TABLE_NAME);
+        buff.append(" join ").append(Item.FTS_TABLE_NAME);
+        buff.append(" on ").append(Item.TABLE_NAME).append(".").append(Item._ID);
+        buff.append(" = ").append(Item.FTS_TABLE_NAME).append(".docid");
+        buff.append(" where ").append(Item.FTS_TABLE_NAME).append(" match ?");
+        if (!TextUtils.isEmpty(selection)) {
+            buff.append(" and (").append(selection).append(")");
+        }
+        return buff;
+    }
+
     @Override
     public Uri insert(Uri uri, ContentValues values) {
-        String tableName;
-        Uri contentUri;
+        String tableName = insertTableName(uri);
+        SQLiteDatabase db = openHelper.getWritableDatabase();
+        long rowId = insert(db, uri, tableName, values);
+        Uri insertedUri = ContentUris.withAppendedId(uri, rowId);
+        notifyChange(insertedUri);
+        notifyUnreadCountChange(tableName);
+        return insertedUri;
+    }
+
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] valuesArray) {
+        boolean upsert = (uriMatcher.match(uri) == UM_ITEMS_UPSERT);
+        String tableName = upsert ? Item.TABLE_NAME: insertTableName(uri);
+        SQLiteDatabase db = openHelper.getWritableDatabase();
+        int count = 0;
+        beginTransaction(db);
+        try {
+            if (Item.TABLE_NAME.equals(tableName)) {
+                // NOTE: synced items may already exist, skip or update them
+                count = insertOrIgnore(db, tableName, valuesArray, upsert);
+            } else {
+                for (ContentValues values: valuesArray) {
+                    insert(db, uri, tableName, values);
+                }
+                count = valuesArray.length;
+            }
+            if (count > 0) {
+                notifyChange(upsert ? Item.CONTENT_URI: uri);
+                notifyUnreadCountChange(tableName);
+            }
+            setTransactionSuccessful(db);
+        } finally {
+            endTransaction(db);
+        }
+        return count;
+    }
+
+    private static String insertTableName(Uri uri) {
         switch (uriMatcher.match(uri)) {
         case UM_SUBS:
-            tableName = Subscription.TABLE_NAME;
-            contentUri = Subscription.CONTENT_URI;
-            values.put(Subscription._DISABLED, 0);
-            break;
+            return Subscription.TABLE_NAME;
         case UM_ITEMS:
-            tableName = Item.TABLE_NAME;
-            contentUri = Item.CONTENT_URI;
-            break;
+            return Item.TABLE_NAME;
         case UM_PINS:
-            tableName = Pin.TABLE_NAME;
-            contentUri = Pin.CONTENT_URI;
-            break;
+            return Pin.TABLE_NAME;
+        case UM_CHECKPOINTS:
+            return SyncCheckpoint.TABLE_NAME;
+        case UM_ICONS:
+            return Icon.TABLE_NAME;
         default:
             throw new IllegalArgumentException("Unknown URI " + uri);
         }
+    }
 
-        SQLiteDatabase db = openHelper.getWritableDatabase();
+    /**
+     * inserts items not existing. if upsert, existing items are updated
+     * only if the modified time is newer, the unread is not updated.
+     * returns the count of inserted or updated items.
+     */
+    private static int insertOrIgnore(SQLiteDatabase db, String tableName,
+            ContentValues[] valuesArray, boolean upsert) {
+        HashMap<String, SQLiteStatement> stmts
+            = new HashMap<String, SQLiteStatement>(4);
+        SQLiteStatement changes = db.compileStatement("select changes()");
+        try {
+            int count = 0;
+            StringBuilder buff = new StringBuilder(128);
+            for (ContentValues values: valuesArray) {
+                buff.setLength(0);
+                buff.append("insert or ignore into ");
+                buff.append(tableName);
+                buff.append(" (");
+                int i = 0;
+                for (Map.Entry<String, Object> e: values.valueSet()) {
+                    if (i++ > 0) {
+                        buff.append(", ");
+                    }
+                    buff.append(e.getKey());
+                }
+                buff.append(") values (");
+                for (int j = 0; j < i; j++) {
+                    buff.append((j > 0) ? ", ?": "?");
+                }
+                buff.append(")");
+
+                String sql = new String(buff);
+                SQLiteStatement stmt = stmts.get(sql);
+                if (stmt == null) {
+                    stmt = db.compileStatement(sql);
+                    stmts.put(sql, stmt);
+                }
+                i = 1;
+                for (Map.Entry<String, Object> e: values.valueSet()) {
+                    bind(stmt, i++, e.getValue());
+                }
+                stmt.execute();
+                int inserted = (int) changes.simpleQueryForLong();
+                if (inserted == 0 && upsert) {
+                    int updated = updateIfModified(db, tableName, values, stmts,
+                        changes);
+                    if (updated > 0) {
+                        indexItem(db, values, stmts);
+                    }
+                    count += updated;
+                } else {
+                    if (inserted > 0) {
+                        indexItem(db, values, stmts);
+                    }
+                    count += inserted;
+                }
+            }
+            return count;
+        } finally {
+            changes.close();
+            for (SQLiteStatement stmt: stmts.values()) {
+                stmt.close();
+            }
+        }
+    }
+
+    private static int updateIfModified(SQLiteDatabase db, String tableName,
+            ContentValues values, HashMap<String, SQLiteStatement> stmts,
+            SQLiteStatement changes) {
+        Long modifiedTime = values.getAsLong(Item._MODIFIED_TIME);
+        if (modifiedTime == null) {
+            return 0;
+        }
+        StringBuilder buff = new StringBuilder(128);
+        buff.append("update ");
+        buff.append(tableName);
+        buff.append(" set ");
+        int i = 0;
+        for (Map.Entry<String, Object> e: values.valueSet()) {
+            if (isUpsertKeepColumn(e.getKey())) {
+                continue;
+            }
+            if (i++ > 0) {
+                buff.append(", ");
+            }
+            buff.append(e.getKey());
+            buff.append(" = ?");
+        }
+        buff.append(" where ");
+        buff.append(Item._ID);
+        buff.append(" = ? and ifnull(");
+        buff.append(Item._MODIFIED_TIME);
+        buff.append(", 0) < ?");
+
+        String sql = new String(buff);
+        SQLiteStatement stmt = stmts.get(sql);
+        if (stmt == null) {
+            stmt = db.compileStatement(sql);
+            stmts.put(sql, stmt);
+        }
+        i = 1;
+        for (Map.Entry<String, Object> e: values.valueSet()) {
+            if (!isUpsertKeepColumn(e.getKey())) {
+                bind(stmt, i++, e.getValue());
+            }
+        }
+        bind(stmt, i++, values.get(Item._ID));
+        bind(stmt, i, modifiedTime);
+        stmt.execute();
+        return (int) changes.simpleQueryForLong();
+    }
+
+    /** updates the full text index of the item, the body as plain text */
+    private static void indexItem(SQLiteDatabase db, ContentValues values,
+            HashMap<String, SQLiteStatement> stmts) {
+        SQLiteStatement delete = stmts.get(SQL_FTS_DELETE);
+        if (delete == null) {
+            delete = db.compileStatement(SQL_FTS_DELETE);
+            stmts.put(SQL_FTS_DELETE, delete);
+        }
+        SQLiteStatement insert = stmts.get(SQL_FTS_INSERT);
+        if (insert == null) {
+            insert = db.compileStatement(SQL_FTS_INSERT);
+            stmts.put(SQL_FTS_INSERT, insert);
+        }
+        long id = values.getAsLong(Item._ID);
+        delete.bindLong(1, id);
+        delete.execute();
+        insert.bindLong(1, id);
+        bind(insert, 2, values.getAsString(Item._TITLE));
+        bind(insert, 3, Utils.htmlAsPlainText(values.getAsString(Item._BODY)));
+        bind(insert, 4, values.getAsString(Item._AUTHOR));
+        insert.execute();
+    }
+
+    private static boolean isUpsertKeepColumn(String column) {
+        // NOTE: the local unread state is kept
+        return (Item._ID.equals(column) || Item._UNREAD.equals(column)
+            || Item._SUBSCRIPTION_ID.equals(column));
+    }
+
+    private static void bind(SQLiteStatement stmt, int index, Object value) {
+        if (value == null) {
+            stmt.bindNull(index);
+        } else if (value instanceof byte[]) {
+            stmt.bindBlob(index, (byte[]) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            stmt.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            stmt.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            stmt.bindLong(index, ((Boolean) value) ? 1: 0);
+        } else {
+            stmt.bindString(index, value.toString());
+        }
+    }
+
+    private static long insert(SQLiteDatabase db, Uri uri, String tableName,
+            ContentValues values) {
+        if (Subscription.TABLE_NAME.equals(tableName)) {
+            values.put(Subscription._DISABLED, 0);
+        }
         long rowId = db.insert(tableName, tableName, values);
         if (rowId > 0) {
-            Uri insertedUri = ContentUris.withAppendedId(contentUri, rowId);
-            getContext().getContentResolver().notifyChange(insertedUri, null);
-            return insertedUri;
+            if (Item.TABLE_NAME.equals(tableName)) {
+                HashMap<String, SQLiteStatement> stmts
+                    = new HashMap<String, SQLiteStatement>(2);
+                try {
+                    indexItem(db, values, stmts);
+                } finally {
+                    for (SQLiteStatement stmt: stmts.values()) {
+                        stmt.close();
+                    }
+                }
+            }
+            return rowId;
         }
-
         throw new SQLException("Failed to insert row into " + uri);
     }
 
@@ -357,13 +765,112 @@ public class ReaderProvider extends ContentProvider {
         case UM_PINS:
             tableName = Pin.TABLE_NAME;
             break;
+        case UM_CHECKPOINT_ID:
+            tableName = SyncCheckpoint.TABLE_NAME;
+            where = sqlIdWhere(uri.getPathSegments().get(1), where);
+            break;
+        case UM_CHECKPOINTS:
+            tableName = SyncCheckpoint.TABLE_NAME;
+            break;
+        case UM_ICONS:
+            tableName = Icon.TABLE_NAME;
+            break;
         default:
             throw new IllegalArgumentException("Unknown URI " + uri);
         }
 
         int count = update ? db.update(tableName, values, where, whereArgs):
             db.delete(tableName, where, whereArgs);
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
+        if (count > 0) {
+            notifyUnreadCountChange(tableName);
+        }
         return count;
     }
+
+    private void notifyUnreadCountChange(String tableName) {
+        // NOTE: unread counts of subscriptions are updated by item triggers
+        if (Item.TABLE_NAME.equals(tableName)) {
+            notifyChange(Subscription.CONTENT_URI);
+        }
+    }
+
+    private void beginTransaction(SQLiteDatabase db) {
+        db.beginTransaction();
+        NotifyBatch batch = this.notifyBatch.get();
+        if (batch == null) {
+            batch = new NotifyBatch();
+            this.notifyBatch.set(batch);
+        }
+        batch.depth++;
+    }
+
+    private void setTransactionSuccessful(SQLiteDatabase db) {
+        db.setTransactionSuccessful();
+        NotifyBatch batch = this.notifyBatch.get();
+        if (batch != null) {
+            batch.successful = true;
+        }
+    }
+
+    private void endTransaction(SQLiteDatabase db) {
+        try {
+            db.endTransaction();
+        } finally {
+            NotifyBatch batch = this.notifyBatch.get();
+            if (batch != null) {
+                if (!batch.successful) {
+                    batch.failed = true;
+                }
+                batch.successful = false;
+                if (--batch.depth == 0) {
+                    this.notifyBatch.remove();
+                    if (!batch.failed) {
+                        for (Uri uri: batch.uris) {
+                            getContext().getContentResolver().notifyChange(uri, null);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void notifyChange(Uri uri) {
+        NotifyBatch batch = this.notifyBatch.get();
+        if (batch == null) {
+            getContext().getContentResolver().notifyChange(uri, null);
+            return;
+        }
+        // NOTE: observers of descendants are notified by the table uri
+        switch (uriMatcher.match(uri)) {
+        case UM_SUB_ID:
+        case UM_SUBS:
+        case UM_SUBS_FOLDER:
+        case UM_SUBS_RATE:
+            batch.uris.add(Subscription.CONTENT_URI);
+            break;
+        case UM_ITEM_ID:
+        case UM_ITEMS:
+            batch.uris.add(Item.CONTENT_URI);
+            break;
+        case UM_PIN_ID:
+        case UM_PINS:
+            batch.uris.add(Pin.CONTENT_URI);
+            break;
+        default:
+            batch.uris.add(uri);
+        }
+    }
+
+    /**
+     * Change notifications deferred until the outermost transaction of
+     * the current thread ends.
+     */
+    private static class NotifyBatch {
+
+        private final Set<Uri> uris = new HashSet<Uri>();
+        private int depth;
+        private boolean successful;
+        private boolean failed;
+    }
 }
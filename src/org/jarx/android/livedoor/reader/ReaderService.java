@@ -24,7 +24,6 @@ public class ReaderService extends Service {
         = "org.jarx.android.livedoor.reader.action.UNREAD_MODIFIED";
 
     private static final String TAG = "ReaderService";
-    private static final long RMAN_INTERVAL = 30 * 60 * 1000;
 
     class ReaderBinder extends Binder {
 
@@ -37,8 +36,6 @@ public class ReaderService extends Service {
         }
     }
 
-    private ReaderManager rman;
-    private long rmanExpiredTime;
     private NotificationManager nman;
     private Timer timer;
     private boolean syncRunning;
@@ -83,40 +80,28 @@ public class ReaderService extends Service {
 
     @Override
     public boolean onUnbind(Intent intent) {
-        ReaderManager rm = this.rman;
-        if (rm != null) {
-            try {
-                rm.logout();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        this.rman = null;
+        // NOTE: no logout, the manager is shared in the process
         return true;
     }
 
     public ReaderManager getSharedReaderManager() {
-        ReaderManager rm = this.rman;
-        long now = System.currentTimeMillis();
-        if (rm != null) {
-            if (this.rmanExpiredTime > 0 && this.rmanExpiredTime < now) {
-                // NOTE: no logout
-            } else {
-                return rm;
-            }
-        }
-        rm = new ReaderManager(getApplicationContext());
-        this.rman = rm;
-        this.rmanExpiredTime = System.currentTimeMillis() + RMAN_INTERVAL;
-        return rm;
+        return ReaderManager.getInstance(getApplicationContext());
     }
 
     public boolean startSync() {
         long interval = ReaderPreferences.getSyncInterval(getApplicationContext());
-        return startSyncTimer(0, interval);
+        return startSyncTimer(0, interval, true);
     }
 
-    public synchronized boolean startSyncTimer(long delay, long interval) {
+    public boolean startSyncTimer(long delay, long interval) {
+        return startSyncTimer(delay, interval, false);
+    }
+
+    /**
+     * @param force syncs at the first time without the probe
+     */
+    public synchronized boolean startSyncTimer(long delay, long interval,
+            final boolean force) {
         if (this.syncRunning) {
             return false;
         }
@@ -126,18 +111,26 @@ public class ReaderService extends Service {
         this.timer = new Timer();
 
         TimerTask timerTask = new TimerTask() {
+            private boolean forceOnce = force;
+
             public void run() {
                 Context context = getApplicationContext();
-                ReaderManager rm = ReaderManager.newInstance(context);
+                ReaderManager rm = ReaderManager.getInstance(context);
                 ReaderService.this.setSyncRunning(true);
                 try {
                     if (rm.login()) {
+                        int unreadCount = rm.probeUnreadCount();
+                        if (!this.forceOnce && !rm.isSyncNeeded(unreadCount)) {
+                            Log.d(TAG, "sync skipped, no unread count changed");
+                            return;
+                        }
+                        this.forceOnce = false;
                         ReaderPreferences.setLastSyncTime(
                             context, System.currentTimeMillis());
                         ReaderService.this.notifySyncStarted();
-                        int syncCount = rm.sync();
-                        ReaderService.this.notifySyncFinished(syncCount);
-                        rm.logout();
+                        SyncResult result = rm.sync();
+                        rm.setSyncedUnreadCount(unreadCount);
+                        ReaderService.this.notifySyncFinished(result.getSyncCount());
                     }
                 } catch (IOException e) {
                     ReaderService.this.notifySyncError(e);
@@ -186,7 +179,7 @@ public class ReaderService extends Service {
             return;
         }
         Context context = getApplicationContext();
-        ReaderManager rm = ReaderManager.newInstance(context);
+        ReaderManager rm = ReaderManager.getInstance(context);
         int unreadCount = rm.countUnread();
         String msg = this.syncFinishedFormat.format(
             new Integer[]{syncCount, unreadCount});
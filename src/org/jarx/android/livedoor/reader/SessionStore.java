@@ -0,0 +1,129 @@
+package org.jarx.android.livedoor.reader;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Persistent login session, api key and cookies, shared by ApiClient
+ * instances so that a sync does not login again.
+ */
+public class SessionStore {
+
+    private static final String PREFS_NAME = "session";
+    private static final String KEY_LOGIN_ID = "login_id";
+    private static final String KEY_API_KEY = "api_key";
+    private static final String KEY_COOKIES = "cookies";
+    private static final String ENCODING = "UTF-8";
+
+    private final SharedPreferences prefs;
+
+    public SessionStore(Context context) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public synchronized String getLoginId() {
+        return this.prefs.getString(KEY_LOGIN_ID, null);
+    }
+
+    public synchronized String getApiKey() {
+        return this.prefs.getString(KEY_API_KEY, null);
+    }
+
+    /** returns cookies not expired */
+    public synchronized List<Cookie> getCookies() {
+        List<Cookie> cookies = new ArrayList<Cookie>();
+        String value = this.prefs.getString(KEY_COOKIES, null);
+        if (value == null || value.length() == 0) {
+            return cookies;
+        }
+        Date now = new Date();
+        for (String line: value.split("\n")) {
+            Cookie cookie = decode(line);
+            if (cookie != null && !cookie.isExpired(now)) {
+                cookies.add(cookie);
+            }
+        }
+        return cookies;
+    }
+
+    public synchronized void save(String loginId, String apiKey,
+            List<Cookie> cookies) {
+        StringBuilder buff = new StringBuilder(512);
+        for (Cookie cookie: cookies) {
+            if (buff.length() > 0) {
+                buff.append("\n");
+            }
+            encode(cookie, buff);
+        }
+        SharedPreferences.Editor editor = this.prefs.edit();
+        editor.putString(KEY_LOGIN_ID, loginId);
+        editor.putString(KEY_API_KEY, apiKey);
+        editor.putString(KEY_COOKIES, new String(buff));
+        editor.commit();
+    }
+
+    public synchronized void clear() {
+        SharedPreferences.Editor editor = this.prefs.edit();
+        editor.remove(KEY_LOGIN_ID);
+        editor.remove(KEY_API_KEY);
+        editor.remove(KEY_COOKIES);
+        editor.commit();
+    }
+
+    private static void encode(Cookie cookie, StringBuilder buff) {
+        Date expiry = cookie.getExpiryDate();
+        buff.append(escape(cookie.getName())).append("\t");
+        buff.append(escape(cookie.getValue())).append("\t");
+        buff.append(escape(cookie.getDomain())).append("\t");
+        buff.append(escape(cookie.getPath())).append("\t");
+        buff.append((expiry == null) ? 0: expiry.getTime()).append("\t");
+        buff.append(cookie.isSecure() ? 1: 0);
+    }
+
+    private static Cookie decode(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 6) {
+            return null;
+        }
+        BasicClientCookie cookie = new BasicClientCookie(
+            unescape(fields[0]), unescape(fields[1]));
+        cookie.setDomain(unescape(fields[2]));
+        cookie.setPath(unescape(fields[3]));
+        long expiry = Utils.asLong(fields[4]);
+        if (expiry > 0) {
+            cookie.setExpiryDate(new Date(expiry));
+        }
+        cookie.setSecure(fields[5].equals("1"));
+        return cookie;
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        try {
+            return URLEncoder.encode(value, ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String unescape(String value) {
+        if (value.length() == 0) {
+            return null;
+        }
+        try {
+            return URLDecoder.decode(value, ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -12,7 +12,6 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.database.Cursor;
-import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
@@ -54,7 +53,11 @@ public class SubListActivity extends ListActivity
     private BroadcastReceiver refreshReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
-            SubListActivity.this.initListAdapter();
+            // NOTE: managed cursor is requeried if subscriptions only updated
+            SyncEvent event = SyncEvent.fromIntent(intent);
+            if (event == null || event.isSubsChanged()) {
+                SubListActivity.this.initListAdapter();
+            }
         }
     };
 
@@ -206,12 +209,7 @@ public class SubListActivity extends ListActivity
             Subscription sub = subCursor.getSubscription();
             titleView.setText(sub.getTitle() + " (" + sub.getUnreadCount() + ")");
             ratingBar.setRating(sub.getRate());
-            Bitmap icon = sub.getIcon(SubListActivity.this);
-            if (icon == null) {
-                iconView.setImageResource(R.drawable.item_read);
-            } else {
-                iconView.setImageBitmap(icon);
-            }
+            IconCache.getInstance(SubListActivity.this).bind(iconView, sub);
 
             StringBuilder buff = new StringBuilder(64);
             buff.append(sub.getSubscribersCount());
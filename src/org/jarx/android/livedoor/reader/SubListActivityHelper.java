@@ -136,11 +136,6 @@ public class SubListActivityHelper extends ActivityHelper {
                 values.put(Item._UNREAD, 0);
                 cr.update(Item.CONTENT_URI, values, Item._UNREAD + " = 1", null);
 
-                values.clear();
-                values.put(Subscription._UNREAD_COUNT, 0);
-                cr.update(Subscription.CONTENT_URI, values,
-                    Subscription._UNREAD_COUNT + " <> 0", null);
-
                 listable.getHandler().post(new Runnable() {
                     public void run() {
                         listable.initListAdapter();
@@ -168,9 +163,6 @@ public class SubListActivityHelper extends ActivityHelper {
                 ContentResolver cr = activity.getContentResolver();
                 cr.delete(Item.CONTENT_URI, where, null);
                 if (all) {
-                    ContentValues values = new ContentValues();
-                    values.put(Subscription._UNREAD_COUNT, 0);
-                    cr.update(Subscription.CONTENT_URI, values, null, null);
                     context.sendBroadcast(
                         new Intent(ReaderService.ACTION_UNREAD_MODIFIED));
                 }
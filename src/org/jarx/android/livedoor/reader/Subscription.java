@@ -3,8 +3,6 @@ package org.jarx.android.livedoor.reader;
 import java.io.Serializable;
 import java.util.Comparator;
 import java.util.ArrayList;
-import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.CursorWrapper;
@@ -26,10 +24,15 @@ public final class Subscription implements Serializable, BaseColumns {
         = Uri.parse(ReaderProvider.SUB_FOLDER_CONTENT_URI_NAME);
     public static final Uri RATE_CONTENT_URI
         = Uri.parse(ReaderProvider.SUB_RATE_CONTENT_URI_NAME);
+    public static final Uri FOLDER_TREE_URI
+        = Uri.parse(ReaderProvider.SUB_FOLDER_TREE_URI_NAME);
+    public static final Uri RATE_TREE_URI
+        = Uri.parse(ReaderProvider.SUB_RATE_TREE_URI_NAME);
 
     public static final String _URI = "uri";
     public static final String _TITLE = "title";
     public static final String _ICON_URI = "icon_uri";
+    // NOTE: icons are stored in Icon since version 14
     public static final String _ICON = "icon";
     public static final String _RATE = "rate";
     public static final String _SUBSCRIBERS_COUNT = "subscribers_count";
@@ -42,13 +45,27 @@ public final class Subscription implements Serializable, BaseColumns {
     public static final String _READ_ITEM_ID = "read_item_id";
     // NOTE: database version 7 or later
     public static final String _LAST_ITEM_ID = "last_item_id";
+    // NOTE: database version 8 or later
+    public static final String _ICON_ETAG = "icon_etag";
+    public static final String _ICON_LAST_MODIFIED = "icon_last_modified";
+    public static final String _ICON_CHECKED_TIME = "icon_checked_time";
+    // NOTE: database version 10 or later
+    public static final String _UPDATE_INTERVAL = "update_interval";
+    public static final String _NEXT_SYNC_TIME = "next_sync_time";
 
     public static final String[] DEFAULT_SELECT = {
         _ID, _URI, _TITLE, _RATE, _SUBSCRIBERS_COUNT, _UNREAD_COUNT,
         _FOLDER, _MODIFIED_TIME, _ITEM_SYNC_TIME, _DISABLED,
-        _READ_ITEM_ID, _LAST_ITEM_ID
+        _READ_ITEM_ID, _LAST_ITEM_ID, _UPDATE_INTERVAL, _NEXT_SYNC_TIME,
+        _ICON_URI
+    };
+    public static final String[] SELECT_UNREAD_COUNT = {_UNREAD_COUNT};
+    public static final String[] SELECT_SUM_UNREAD_COUNT = {
+        "sum(" + _UNREAD_COUNT + ")"
+    };
+    public static final String[] SELECT_ICON_VALIDATORS = {
+        _ICON_URI, _ICON_ETAG, _ICON_LAST_MODIFIED
     };
-    public static final String[] SELECT_ICON = {_ICON};
 
     public static final int GROUP_FOLDER = 1;
     public static final int GROUP_RATE = 2;
@@ -68,7 +85,12 @@ public final class Subscription implements Serializable, BaseColumns {
         + _ITEM_SYNC_TIME + " integer default 0,"
         + _DISABLED + " integer default 0,"
         + _READ_ITEM_ID + " integer,"
-        + _LAST_ITEM_ID + " integer"
+        + _LAST_ITEM_ID + " integer,"
+        + _ICON_ETAG + " text,"
+        + _ICON_LAST_MODIFIED + " text,"
+        + _ICON_CHECKED_TIME + " integer default 0,"
+        + _UPDATE_INTERVAL + " integer default 0,"
+        + _NEXT_SYNC_TIME + " integer default 0"
         + ")";
 
     public static final String[] INDEX_COLUMNS = {
@@ -78,7 +100,8 @@ public final class Subscription implements Serializable, BaseColumns {
         _FOLDER,
         _MODIFIED_TIME,
         _ITEM_SYNC_TIME,
-        _DISABLED
+        _DISABLED,
+        _NEXT_SYNC_TIME
     };
 
     public static final String[] SORT_ORDERS = {
@@ -116,6 +139,23 @@ public final class Subscription implements Serializable, BaseColumns {
             // PENDING: sqlite3 not supported.
             // alter table subscription *modify* disabled integer default 0
         }
+        if (oldVersion < 8) {
+            sqls.add("alter table " + TABLE_NAME
+                + " add " + _ICON_ETAG + " text");
+            sqls.add("alter table " + TABLE_NAME
+                + " add " + _ICON_LAST_MODIFIED + " text");
+            sqls.add("alter table " + TABLE_NAME
+                + " add " + _ICON_CHECKED_TIME + " integer default 0");
+            sqls.add("update " + TABLE_NAME + " set " + _ICON_CHECKED_TIME
+                + " = strftime('%s', 'now') where " + _ICON + " is not null");
+        }
+        if (oldVersion < 10) {
+            sqls.add("alter table " + TABLE_NAME
+                + " add " + _UPDATE_INTERVAL + " integer default 0");
+            sqls.add("alter table " + TABLE_NAME
+                + " add " + _NEXT_SYNC_TIME + " integer default 0");
+            sqls.add(ReaderProvider.sqlCreateIndex(TABLE_NAME, _NEXT_SYNC_TIME));
+        }
         return sqls.toArray(new String[sqls.size()]);
     }
 
@@ -133,6 +173,8 @@ public final class Subscription implements Serializable, BaseColumns {
     private boolean disabled;
     private long readItemId;
     private long lastItemId;
+    private long updateInterval;
+    private long nextSyncTime;
 
     public Subscription() {
     }
@@ -170,20 +212,14 @@ public final class Subscription implements Serializable, BaseColumns {
     }
 
     public Bitmap getIcon(Context context) {
-        ContentResolver cr = context.getContentResolver();
-        Uri uri = ContentUris.withAppendedId(CONTENT_URI, this.getId());
-        Cursor cursor = cr.query(uri, SELECT_ICON, null, null, null);
         try {
-            cursor.moveToFirst();
-            byte[] data = cursor.getBlob(0);
+            byte[] data = Icon.getData(context, this.iconUri);
             if (data != null) {
                 return BitmapFactory.decodeByteArray(
                     data, 0, data.length);
             }
         } catch (OutOfMemoryError e) {
             // NOTE: ignore, display no icon
-        } finally {
-            cursor.close();
         }
         return null;
     }
@@ -260,6 +296,23 @@ public final class Subscription implements Serializable, BaseColumns {
         this.lastItemId = lastItemId;
     }
 
+    /** learned seconds between the modifications, 0 if unknown */
+    public long getUpdateInterval() {
+        return this.updateInterval;
+    }
+
+    public void setUpdateInterval(long updateInterval) {
+        this.updateInterval = updateInterval;
+    }
+
+    public long getNextSyncTime() {
+        return this.nextSyncTime;
+    }
+
+    public void setNextSyncTime(long nextSyncTime) {
+        this.nextSyncTime = nextSyncTime;
+    }
+
     public boolean equals(Object o) {
         if (o == this) {
             return true;
@@ -290,6 +343,9 @@ public final class Subscription implements Serializable, BaseColumns {
         private final int posDisabled;
         private final int posReadItemId;
         private final int posLastItemId;
+        private final int posUpdateInterval;
+        private final int posNextSyncTime;
+        private final int posIconUri;
 
         public FilterCursor(Cursor cursor) {
             this(cursor, null);
@@ -310,6 +366,9 @@ public final class Subscription implements Serializable, BaseColumns {
             this.posDisabled = getColumnIndex(Subscription._DISABLED);
             this.posReadItemId = getColumnIndex(Subscription._READ_ITEM_ID);
             this.posLastItemId = getColumnIndex(Subscription._LAST_ITEM_ID);
+            this.posUpdateInterval = getColumnIndex(Subscription._UPDATE_INTERVAL);
+            this.posNextSyncTime = getColumnIndex(Subscription._NEXT_SYNC_TIME);
+            this.posIconUri = getColumnIndex(Subscription._ICON_URI);
         }
 
         public Subscription getSubscription() {
@@ -326,6 +385,13 @@ public final class Subscription implements Serializable, BaseColumns {
             sub.setDisabled(getInt(this.posDisabled) == 1);
             sub.setReadItemId(getLong(this.posReadItemId));
             sub.setLastItemId(getLong(this.posLastItemId));
+            if (this.posUpdateInterval != -1) {
+                sub.setUpdateInterval(getLong(this.posUpdateInterval));
+                sub.setNextSyncTime(getLong(this.posNextSyncTime));
+            }
+            if (this.posIconUri != -1) {
+                sub.setIconUri(getString(this.posIconUri));
+            }
             return sub;
         }
     }
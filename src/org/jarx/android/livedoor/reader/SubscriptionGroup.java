@@ -0,0 +1,156 @@
+package org.jarx.android.livedoor.reader;
+
+import java.util.ArrayList;
+import android.provider.BaseColumns;
+
+/**
+ * Counts of enabled subscriptions by folder and by rate, maintained by
+ * triggers on the subscription table. Folders without name are the key ''.
+ */
+public class SubscriptionGroup implements BaseColumns {
+
+    public static final String TABLE_NAME = "subscription_group";
+
+    public static final String _GROUP = "group_type";
+    public static final String _KEY = "group_key";
+    public static final String _SUBS_COUNT = "subs_count";
+    public static final String _UNREAD_SUBS_COUNT = "unread_subs_count";
+    public static final String _UNREAD_COUNT = "unread_count";
+
+    // NOTE: in the order of the group by query of subscriptions
+    public static final String[] DEFAULT_SELECT = {
+        _ID, _GROUP, _SUBS_COUNT, _KEY, _UNREAD_COUNT, _UNREAD_SUBS_COUNT
+    };
+
+    public static final String SQL_CREATE_TABLE
+        = "create table if not exists " + TABLE_NAME + " ("
+        + _ID + " integer primary key,"
+        + _GROUP + " integer,"
+        + _KEY + " text,"
+        + _SUBS_COUNT + " integer default 0,"
+        + _UNREAD_SUBS_COUNT + " integer default 0,"
+        + _UNREAD_COUNT + " integer default 0,"
+        + "unique (" + _GROUP + ", " + _KEY + ")"
+        + ")";
+
+    private static final String FOLDER_KEY
+        = "ifnull(%1$s." + Subscription._FOLDER + ", '')";
+    private static final String RATE_KEY
+        = "ifnull(%1$s." + Subscription._RATE + ", 0)";
+    private static final String DISABLED
+        = "ifnull(%1$s." + Subscription._DISABLED + ", 0)";
+    private static final String UNREAD
+        = "ifnull(%1$s." + Subscription._UNREAD_COUNT + ", 0)";
+
+    // NOTE: moved between groups, subs counts change and groups may be empty
+    private static final String MOVED = "(" + sqlChanged(FOLDER_KEY)
+        + " or " + sqlChanged(RATE_KEY) + " or " + sqlChanged(DISABLED) + ")";
+
+    public static final String[] SQL_CREATE_TRIGGERS = {
+        "create trigger if not exists subscription_group_insert"
+            + " after insert on " + Subscription.TABLE_NAME + " begin "
+            + sqlCount("new", 1) + " end",
+        "create trigger if not exists subscription_group_move"
+            + " after update of " + Subscription._FOLDER + ", "
+            + Subscription._RATE + ", " + Subscription._DISABLED
+            + " on " + Subscription.TABLE_NAME + " when " + MOVED
+            + " begin " + sqlCount("old", -1) + sqlCount("new", 1)
+            + sqlDeleteEmpty() + " end",
+        "create trigger if not exists subscription_group_unread"
+            + " after update of " + Subscription._UNREAD_COUNT
+            + " on " + Subscription.TABLE_NAME + " when not " + MOVED
+            + " and " + sqlChanged(UNREAD) + " and "
+            + String.format(DISABLED, "new") + " = 0"
+            + " begin " + sqlUnreadDelta() + " end",
+        "create trigger if not exists subscription_group_delete"
+            + " after delete on " + Subscription.TABLE_NAME + " begin "
+            + sqlCount("old", -1) + sqlDeleteEmpty() + " end"
+    };
+
+    public static String[] sqlForUpgrade(int oldVersion, int newVersion) {
+        ArrayList<String> sqls = new ArrayList<String>(SQL_CREATE_TRIGGERS.length + 4);
+        if (oldVersion < 15) {
+            sqls.add(SQL_CREATE_TABLE);
+            sqls.add(sqlInsertGroups(Subscription.GROUP_FOLDER, FOLDER_KEY));
+            sqls.add(sqlInsertGroups(Subscription.GROUP_RATE, RATE_KEY));
+        } else if (oldVersion < 16) {
+            sqls.add("drop trigger if exists subscription_group_update");
+        }
+        if (oldVersion < 16) {
+            for (String sql: SQL_CREATE_TRIGGERS) {
+                sqls.add(sql);
+            }
+        }
+        return sqls.toArray(new String[sqls.size()]);
+    }
+
+    private static String sqlInsertGroups(int group, String key) {
+        String k = String.format(key, Subscription.TABLE_NAME);
+        return "insert into " + TABLE_NAME + " (" + _GROUP + ", " + _KEY + ", "
+            + _SUBS_COUNT + ", " + _UNREAD_SUBS_COUNT + ", " + _UNREAD_COUNT
+            + ") select " + group + ", " + k + ", count(*), sum(ifnull("
+            + Subscription._UNREAD_COUNT + ", 0) > 0), sum(ifnull("
+            + Subscription._UNREAD_COUNT + ", 0)) from "
+            + Subscription.TABLE_NAME + " where ifnull("
+            + Subscription._DISABLED + ", 0) = 0 group by " + k;
+    }
+
+    /** counts up or down the groups of the new or old row, if enabled */
+    private static String sqlCount(String row, int sign) {
+        return sqlCount(row, sign, Subscription.GROUP_FOLDER, FOLDER_KEY)
+            + sqlCount(row, sign, Subscription.GROUP_RATE, RATE_KEY);
+    }
+
+    private static String sqlCount(String row, int sign, int group, String key) {
+        String k = String.format(key, row);
+        String enabled = String.format(DISABLED, row) + " = 0";
+        String unread = String.format(UNREAD, row);
+        StringBuilder buff = new StringBuilder(512);
+        buff.append("insert or ignore into ").append(TABLE_NAME);
+        buff.append(" (").append(_GROUP).append(", ").append(_KEY);
+        buff.append(") select ").append(group).append(", ").append(k);
+        buff.append(" where ").append(enabled).append("; ");
+        buff.append("update ").append(TABLE_NAME).append(" set ");
+        buff.append(_SUBS_COUNT).append(" = ").append(_SUBS_COUNT);
+        buff.append(" + ").append(sign).append(", ");
+        buff.append(_UNREAD_SUBS_COUNT).append(" = ").append(_UNREAD_SUBS_COUNT);
+        buff.append(" + ").append(sign).append(" * (").append(unread).append(" > 0), ");
+        buff.append(_UNREAD_COUNT).append(" = ").append(_UNREAD_COUNT);
+        buff.append(" + ").append(sign).append(" * ").append(unread);
+        buff.append(" where ").append(_GROUP).append(" = ").append(group);
+        buff.append(" and ").append(_KEY).append(" = ").append(k);
+        buff.append(" and ").append(enabled).append("; ");
+        return new String(buff);
+    }
+
+    /** adds the unread delta of the row to both groups, not moved */
+    private static String sqlUnreadDelta() {
+        String oldUnread = String.format(UNREAD, "old");
+        String newUnread = String.format(UNREAD, "new");
+        StringBuilder buff = new StringBuilder(512);
+        buff.append("update ").append(TABLE_NAME).append(" set ");
+        buff.append(_UNREAD_SUBS_COUNT).append(" = ").append(_UNREAD_SUBS_COUNT);
+        buff.append(" + (").append(newUnread).append(" > 0) - (");
+        buff.append(oldUnread).append(" > 0), ");
+        buff.append(_UNREAD_COUNT).append(" = ").append(_UNREAD_COUNT);
+        buff.append(" + ").append(newUnread).append(" - ").append(oldUnread);
+        buff.append(" where (").append(_GROUP).append(" = ");
+        buff.append(Subscription.GROUP_FOLDER).append(" and ").append(_KEY);
+        buff.append(" = ").append(String.format(FOLDER_KEY, "new"));
+        buff.append(") or (").append(_GROUP).append(" = ");
+        buff.append(Subscription.GROUP_RATE).append(" and ").append(_KEY);
+        buff.append(" = ").append(String.format(RATE_KEY, "new")).append("); ");
+        return new String(buff);
+    }
+
+    private static String sqlChanged(String column) {
+        return String.format(column, "old") + " <> " + String.format(column, "new");
+    }
+
+    private static String sqlDeleteEmpty() {
+        return "delete from " + TABLE_NAME + " where " + _SUBS_COUNT + " <= 0; ";
+    }
+
+    private SubscriptionGroup() {
+    }
+}
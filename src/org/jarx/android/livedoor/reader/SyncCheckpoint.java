@@ -0,0 +1,198 @@
+package org.jarx.android.livedoor.reader;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+/**
+ * Progress of an interrupted sync. The row of SUBS_ID is the subscription
+ * list paging, the others are the item sync of the subscription.
+ */
+public class SyncCheckpoint implements BaseColumns {
+
+    public static final String TABLE_NAME = "sync_checkpoint";
+
+    public static final Uri CONTENT_URI
+        = Uri.parse(ReaderProvider.CHECKPOINT_CONTENT_URI_NAME);
+
+    // NOTE: out of the range of subscribe_id, which is a server int
+    public static final long SUBS_ID = Long.MAX_VALUE;
+
+    public static final String _MODIFIED_TIME = "modified_time";
+    public static final String _UNREAD_ONLY = "unread_only";
+    public static final String _OFFSET = "sync_offset";
+    public static final String _DONE = "done";
+    public static final String _LAST_ITEM_ID = "last_item_id";
+    public static final String _CREATED_TIME = "created_time";
+
+    public static final String SQL_CREATE_TABLE
+        = "create table if not exists " + TABLE_NAME + " ("
+        + _ID + " integer primary key,"
+        + _MODIFIED_TIME + " integer,"
+        + _UNREAD_ONLY + " integer,"
+        + _OFFSET + " integer,"
+        + _DONE + " integer,"
+        + _LAST_ITEM_ID + " integer,"
+        + _CREATED_TIME + " integer"
+        + ")";
+
+    public static String[] sqlForUpgrade(int oldVersion, int newVersion) {
+        if (oldVersion < 11) {
+            return new String[] {
+                SQL_CREATE_TABLE
+            };
+        }
+        return new String[0];
+    }
+
+    public static SyncCheckpoint load(ContentResolver cr, long id) {
+        Uri uri = ContentUris.withAppendedId(CONTENT_URI, id);
+        FilterCursor cursor = new FilterCursor(cr.query(uri, null, null, null, null));
+        try {
+            return (cursor.moveToFirst()) ? cursor.getCheckpoint(): null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public static void save(ContentResolver cr, SyncCheckpoint checkpoint) {
+        ContentValues values = new ContentValues();
+        values.put(_MODIFIED_TIME, checkpoint.getModifiedTime());
+        values.put(_UNREAD_ONLY, checkpoint.isUnreadOnly() ? 1: 0);
+        values.put(_OFFSET, checkpoint.getOffset());
+        values.put(_DONE, checkpoint.isDone() ? 1: 0);
+        values.put(_LAST_ITEM_ID, checkpoint.getLastItemId());
+        values.put(_CREATED_TIME, checkpoint.getCreatedTime());
+        Uri uri = ContentUris.withAppendedId(CONTENT_URI, checkpoint.getId());
+        if (cr.update(uri, values, null, null) == 0) {
+            values.put(_ID, checkpoint.getId());
+            cr.insert(CONTENT_URI, values);
+        }
+    }
+
+    public static void delete(ContentResolver cr, long id) {
+        cr.delete(ContentUris.withAppendedId(CONTENT_URI, id), null, null);
+    }
+
+    public static void deleteCreatedBefore(ContentResolver cr, long time) {
+        cr.delete(CONTENT_URI, _CREATED_TIME + " < " + time, null);
+    }
+
+    private long id;
+    private long modifiedTime;
+    private boolean unreadOnly;
+    private int offset;
+    private boolean done;
+    private long lastItemId;
+    private long createdTime;
+
+    public SyncCheckpoint() {
+    }
+
+    public SyncCheckpoint(long id) {
+        this.id = id;
+        this.createdTime = System.currentTimeMillis();
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    /** modified time of the subscription the checkpoint is for */
+    public long getModifiedTime() {
+        return this.modifiedTime;
+    }
+
+    public void setModifiedTime(long modifiedTime) {
+        this.modifiedTime = modifiedTime;
+    }
+
+    public boolean isUnreadOnly() {
+        return this.unreadOnly;
+    }
+
+    public void setUnreadOnly(boolean unreadOnly) {
+        this.unreadOnly = unreadOnly;
+    }
+
+    /** subscriptions or items already synced, the offset to resume */
+    public int getOffset() {
+        return this.offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    /** the subscription list or the unread items are all synced */
+    public boolean isDone() {
+        return this.done;
+    }
+
+    public void setDone(boolean done) {
+        this.done = done;
+    }
+
+    public long getLastItemId() {
+        return this.lastItemId;
+    }
+
+    public void setLastItemId(long lastItemId) {
+        this.lastItemId = lastItemId;
+    }
+
+    public long getCreatedTime() {
+        return this.createdTime;
+    }
+
+    public void setCreatedTime(long createdTime) {
+        this.createdTime = createdTime;
+    }
+
+    public String toString() {
+        return "SyncCheckpoint{id=" + this.id + ",offset=" + this.offset
+            + ",done=" + this.done + "}";
+    }
+
+    public static class FilterCursor extends CursorWrapper {
+
+        private final int posId;
+        private final int posModifiedTime;
+        private final int posUnreadOnly;
+        private final int posOffset;
+        private final int posDone;
+        private final int posLastItemId;
+        private final int posCreatedTime;
+
+        public FilterCursor(Cursor cursor) {
+            super(cursor);
+            this.posId = getColumnIndex(SyncCheckpoint._ID);
+            this.posModifiedTime = getColumnIndex(SyncCheckpoint._MODIFIED_TIME);
+            this.posUnreadOnly = getColumnIndex(SyncCheckpoint._UNREAD_ONLY);
+            this.posOffset = getColumnIndex(SyncCheckpoint._OFFSET);
+            this.posDone = getColumnIndex(SyncCheckpoint._DONE);
+            this.posLastItemId = getColumnIndex(SyncCheckpoint._LAST_ITEM_ID);
+            this.posCreatedTime = getColumnIndex(SyncCheckpoint._CREATED_TIME);
+        }
+
+        public SyncCheckpoint getCheckpoint() {
+            SyncCheckpoint checkpoint = new SyncCheckpoint();
+            checkpoint.setId(getLong(this.posId));
+            checkpoint.setModifiedTime(getLong(this.posModifiedTime));
+            checkpoint.setUnreadOnly(getInt(this.posUnreadOnly) == 1);
+            checkpoint.setOffset(getInt(this.posOffset));
+            checkpoint.setDone(getInt(this.posDone) == 1);
+            checkpoint.setLastItemId(getLong(this.posLastItemId));
+            checkpoint.setCreatedTime(getLong(this.posCreatedTime));
+            return checkpoint;
+        }
+    }
+}
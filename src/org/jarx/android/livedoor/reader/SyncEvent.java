@@ -0,0 +1,135 @@
+package org.jarx.android.livedoor.reader;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import android.content.Intent;
+
+/**
+ * Changes of a sync phase, broadcasted once as intent extras.
+ */
+public class SyncEvent {
+
+    public static final String EXTRA_NEW_SUB_IDS = "newSubIds";
+    public static final String EXTRA_UPDATED_SUB_IDS = "updatedSubIds";
+    public static final String EXTRA_UNREAD_SUB_IDS = "unreadSubIds";
+    public static final String EXTRA_UNREAD_DELTAS = "unreadDeltas";
+
+    private final Set<Long> newSubIds = new LinkedHashSet<Long>();
+    private final Set<Long> updatedSubIds = new LinkedHashSet<Long>();
+    private final Map<Long, Integer> unreadDeltas
+        = new LinkedHashMap<Long, Integer>();
+
+    public SyncEvent() {
+    }
+
+    /** returns null if the intent has no event */
+    public static SyncEvent fromIntent(Intent intent) {
+        if (!intent.hasExtra(EXTRA_NEW_SUB_IDS)) {
+            return null;
+        }
+        SyncEvent event = new SyncEvent();
+        addAll(event.newSubIds, intent.getLongArrayExtra(EXTRA_NEW_SUB_IDS));
+        addAll(event.updatedSubIds, intent.getLongArrayExtra(EXTRA_UPDATED_SUB_IDS));
+        long[] unreadSubIds = intent.getLongArrayExtra(EXTRA_UNREAD_SUB_IDS);
+        int[] deltas = intent.getIntArrayExtra(EXTRA_UNREAD_DELTAS);
+        if (unreadSubIds != null && deltas != null) {
+            for (int i = 0; i < unreadSubIds.length; i++) {
+                event.unreadDeltas.put(unreadSubIds[i], deltas[i]);
+            }
+        }
+        return event;
+    }
+
+    public synchronized Intent toIntent(String action) {
+        long[] unreadSubIds = new long[this.unreadDeltas.size()];
+        int[] deltas = new int[unreadSubIds.length];
+        int i = 0;
+        for (Map.Entry<Long, Integer> e: this.unreadDeltas.entrySet()) {
+            unreadSubIds[i] = e.getKey();
+            deltas[i++] = e.getValue();
+        }
+        return new Intent(action)
+            .putExtra(EXTRA_NEW_SUB_IDS, toArray(this.newSubIds))
+            .putExtra(EXTRA_UPDATED_SUB_IDS, toArray(this.updatedSubIds))
+            .putExtra(EXTRA_UNREAD_SUB_IDS, unreadSubIds)
+            .putExtra(EXTRA_UNREAD_DELTAS, deltas);
+    }
+
+    public synchronized void addNewSubId(long subId) {
+        this.newSubIds.add(subId);
+    }
+
+    public synchronized void addUpdatedSubId(long subId) {
+        this.updatedSubIds.add(subId);
+    }
+
+    public synchronized void addUnreadDelta(long subId, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        Integer d = this.unreadDeltas.get(subId);
+        this.unreadDeltas.put(subId, (d == null) ? delta: d + delta);
+    }
+
+    public synchronized Set<Long> getNewSubIds() {
+        return new LinkedHashSet<Long>(this.newSubIds);
+    }
+
+    public synchronized Set<Long> getUpdatedSubIds() {
+        return new LinkedHashSet<Long>(this.updatedSubIds);
+    }
+
+    public synchronized int getUnreadDelta(long subId) {
+        Integer d = this.unreadDeltas.get(subId);
+        return (d == null) ? 0: d;
+    }
+
+    public synchronized int getUnreadDelta() {
+        int delta = 0;
+        for (int d: this.unreadDeltas.values()) {
+            delta += d;
+        }
+        return delta;
+    }
+
+    /** true if subscriptions are added */
+    public synchronized boolean isSubsChanged() {
+        return !this.newSubIds.isEmpty();
+    }
+
+    public synchronized boolean contains(long subId) {
+        return this.newSubIds.contains(subId)
+            || this.updatedSubIds.contains(subId)
+            || this.unreadDeltas.containsKey(subId);
+    }
+
+    public synchronized boolean isEmpty() {
+        return this.newSubIds.isEmpty() && this.updatedSubIds.isEmpty()
+            && this.unreadDeltas.isEmpty();
+    }
+
+    public synchronized String toString() {
+        return "SyncEvent{new=" + this.newSubIds.size()
+            + ",updated=" + this.updatedSubIds.size()
+            + ",unread=" + this.unreadDeltas.size() + "}";
+    }
+
+    private static void addAll(Set<Long> set, long[] values) {
+        if (values != null) {
+            for (long value: values) {
+                set.add(value);
+            }
+        }
+    }
+
+    private static long[] toArray(Set<Long> set) {
+        long[] values = new long[set.size()];
+        int i = 0;
+        for (long value: set) {
+            values[i++] = value;
+        }
+        return values;
+    }
+}
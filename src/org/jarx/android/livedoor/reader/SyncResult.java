@@ -0,0 +1,82 @@
+package org.jarx.android.livedoor.reader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SyncResult {
+
+    private int syncCount;
+    private int updatedCount;
+    private int deferredCount;
+    private final List<Long> syncedSubIds = new ArrayList<Long>();
+    private final Map<Long, Throwable> errors
+        = new LinkedHashMap<Long, Throwable>();
+
+    public SyncResult() {
+    }
+
+    public int getSyncCount() {
+        return this.syncCount;
+    }
+
+    void addSyncCount(int count) {
+        this.syncCount += count;
+    }
+
+    /** existing items updated by newer modified time */
+    public int getUpdatedCount() {
+        return this.updatedCount;
+    }
+
+    void addUpdatedCount(int count) {
+        this.updatedCount += count;
+    }
+
+    /** subscriptions not synced in the time budget */
+    public int getDeferredCount() {
+        return this.deferredCount;
+    }
+
+    void addDeferredCount(int count) {
+        this.deferredCount += count;
+    }
+
+    /** subscriptions whose items are synced, in subscription order */
+    public List<Long> getSyncedSubIds() {
+        return Collections.unmodifiableList(this.syncedSubIds);
+    }
+
+    void addSyncedSubId(long subId) {
+        this.syncedSubIds.add(subId);
+    }
+
+    /** errors by subscription id, in subscription order */
+    public Map<Long, Throwable> getErrors() {
+        return Collections.unmodifiableMap(this.errors);
+    }
+
+    public boolean hasErrors() {
+        return !this.errors.isEmpty();
+    }
+
+    public Throwable getFirstError() {
+        if (this.errors.isEmpty()) {
+            return null;
+        }
+        return this.errors.values().iterator().next();
+    }
+
+    void addError(long subId, Throwable e) {
+        this.errors.put(subId, e);
+    }
+
+    public String toString() {
+        return "SyncResult{syncCount=" + this.syncCount
+            + ",updatedCount=" + this.updatedCount
+            + ",deferredCount=" + this.deferredCount
+            + ",errors=" + this.errors.size() + "}";
+    }
+}
@@ -0,0 +1,69 @@
+package org.jarx.android.livedoor.reader;
+
+import java.util.Comparator;
+
+/**
+ * Schedules the item sync of subscriptions by the learned update interval,
+ * the rate and the subscribers count. Times are in seconds.
+ */
+public class SyncScheduler {
+
+    public static final long MIN_INTERVAL = 15 * 60;
+    public static final long DEFAULT_INTERVAL = 24 * 60 * 60;
+    public static final long MAX_SYNC_DELAY = 24 * 60 * 60;
+    // NOTE: 1/4 weight of a new observed interval
+    private static final int INTERVAL_WEIGHT = 4;
+
+    /** higher priority first */
+    public static final Comparator<Subscription> PRIORITY_COMPARATOR
+            = new Comparator<Subscription>() {
+        public int compare(Subscription s1, Subscription s2) {
+            return Double.compare(priority(s2), priority(s1));
+        }
+    };
+
+    private SyncScheduler() {
+    }
+
+    /**
+     * returns the moving average of the update interval with the
+     * interval between the last and the current modified time.
+     */
+    public static long learnUpdateInterval(Subscription sub) {
+        long interval = sub.getUpdateInterval();
+        long lastModified = sub.getItemSyncTime();
+        long modified = sub.getModifiedTime();
+        if (lastModified <= 0 || modified <= lastModified) {
+            return interval;
+        }
+        long observed = modified - lastModified;
+        if (interval <= 0) {
+            return observed;
+        }
+        return (interval * (INTERVAL_WEIGHT - 1) + observed) / INTERVAL_WEIGHT;
+    }
+
+    /**
+     * returns seconds to wait for the next item sync, half of the update
+     * interval shortened by the rate, up to MAX_SYNC_DELAY.
+     */
+    public static long nextSyncDelay(Subscription sub) {
+        long interval = sub.getUpdateInterval();
+        if (interval <= 0) {
+            return 0;
+        }
+        int rate = Math.max(sub.getRate(), 0);
+        return Math.min(interval / (2 * (1 + rate)), MAX_SYNC_DELAY);
+    }
+
+    /** hot, rated and popular subscriptions are prior */
+    public static double priority(Subscription sub) {
+        long interval = sub.getUpdateInterval();
+        if (interval <= 0) {
+            interval = DEFAULT_INTERVAL;
+        }
+        double hotness = (double) DEFAULT_INTERVAL / Math.max(interval, MIN_INTERVAL);
+        double popularity = 1 + Math.log10(1 + Math.max(sub.getSubscribersCount(), 0));
+        return (1 + Math.max(sub.getRate(), 0)) * popularity * hotness;
+    }
+}
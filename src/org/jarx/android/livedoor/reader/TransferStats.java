@@ -0,0 +1,156 @@
+package org.jarx.android.livedoor.reader;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transferred bytes per endpoint, compressed (on the wire) and
+ * uncompressed (read by the client).
+ */
+public class TransferStats {
+
+    public static class Endpoint {
+
+        private final String name;
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong compressedBytes = new AtomicLong();
+        private final AtomicLong uncompressedBytes = new AtomicLong();
+
+        private Endpoint(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public long getRequests() {
+            return this.requests.get();
+        }
+
+        public long getCompressedBytes() {
+            return this.compressedBytes.get();
+        }
+
+        public long getUncompressedBytes() {
+            return this.uncompressedBytes.get();
+        }
+
+        /** compressed / uncompressed, 1 if not compressed */
+        public double getRatio() {
+            long uncompressed = getUncompressedBytes();
+            if (uncompressed == 0) {
+                return 1;
+            }
+            return (double) getCompressedBytes() / uncompressed;
+        }
+
+        public String toString() {
+            return this.name + "{requests=" + getRequests()
+                + ",compressed=" + getCompressedBytes()
+                + ",uncompressed=" + getUncompressedBytes() + "}";
+        }
+    }
+
+    private final Map<String, Endpoint> endpoints
+        = new LinkedHashMap<String, Endpoint>();
+
+    public TransferStats() {
+    }
+
+    public synchronized Endpoint getEndpoint(String name) {
+        Endpoint endpoint = this.endpoints.get(name);
+        if (endpoint == null) {
+            endpoint = new Endpoint(name);
+            this.endpoints.put(name, endpoint);
+        }
+        return endpoint;
+    }
+
+    public synchronized Endpoint[] getEndpoints() {
+        return this.endpoints.values().toArray(
+            new Endpoint[this.endpoints.size()]);
+    }
+
+    public long getCompressedBytes() {
+        long bytes = 0;
+        for (Endpoint endpoint: getEndpoints()) {
+            bytes += endpoint.getCompressedBytes();
+        }
+        return bytes;
+    }
+
+    public long getUncompressedBytes() {
+        long bytes = 0;
+        for (Endpoint endpoint: getEndpoints()) {
+            bytes += endpoint.getUncompressedBytes();
+        }
+        return bytes;
+    }
+
+    public String toString() {
+        StringBuilder buff = new StringBuilder(256);
+        buff.append("TransferStats{compressed=").append(getCompressedBytes());
+        buff.append(",uncompressed=").append(getUncompressedBytes());
+        for (Endpoint endpoint: getEndpoints()) {
+            buff.append(",").append(endpoint);
+        }
+        buff.append("}");
+        return new String(buff);
+    }
+
+    static InputStream countCompressed(InputStream in, Endpoint endpoint) {
+        endpoint.requests.incrementAndGet();
+        return new CountingInputStream(in, endpoint.compressedBytes);
+    }
+
+    static InputStream countUncompressed(InputStream in, Endpoint endpoint) {
+        return new CountingInputStream(in, endpoint.uncompressedBytes);
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final AtomicLong counter;
+
+        private CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                this.counter.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                this.counter.addAndGet(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) {
+                this.counter.addAndGet(skipped);
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}